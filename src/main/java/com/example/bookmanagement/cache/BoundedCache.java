@@ -0,0 +1,270 @@
+package com.example.bookmanagement.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 有界本地缓存：容量上限（LRU淘汰）+ 写入后过期（TTL），并记录命中/未命中/淘汰统计
+ * 线程安全：按键哈希分段加锁，每段一个访问顺序的LinkedHashMap，读写只锁所在分段
+ * 容量按分段均分，LRU在分段内近似；适合读多写少、单条数据较小的热点缓存
+ * 防止旧值回填：每个键（按哈希分条）有一个写入代次，put/失效时递增；读库回填前先取代次，
+ * 用putIfGeneration回填，期间被失效或写入过则放弃回填，避免把失效前读到的旧值重新放回缓存
+ */
+public class BoundedCache<K, V> {
+
+    // 分段数上限（2的幂）；容量较小时减少分段，保证每段至少容纳一条
+    private static final int MAX_SEGMENTS = 16;
+    // 写入代次分条数（2的幂，且为分段数的整数倍，同一分条的键必然落在同一分段）
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final Segment<K, V>[] segments;
+    // 只在所属分段的锁内递增；读取不加锁
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private record Entry<V>(V value, long expireAt) {
+    }
+
+    // 单个分段：accessOrder=true，按访问顺序排列，头部为最久未使用；以分段自身作为锁
+    private static final class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public BoundedCache(String name, int maxSize, long ttlMillis) {
+        if (maxSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("缓存容量和过期时间必须大于0：" + name);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+        this.segments = newSegments(count);
+        for (int i = 0; i < count; i++) {
+            // 余数分给前面的分段，各段容量之和等于maxSize
+            segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0), evictions);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int count) {
+        return (Segment<K, V>[]) new Segment[count];
+    }
+
+    /**
+     * 读取缓存，不存在或已过期返回null
+     */
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.expireAt() < now) {
+                segment.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        }
+    }
+
+    /**
+     * 写入缓存（使用默认TTL）
+     */
+    public void put(K key, V value) {
+        put(key, value, ttlMillis);
+    }
+
+    /**
+     * 写入缓存并指定存活时间（不超过默认TTL）
+     */
+    public void put(K key, V value, long ttl) {
+        if (key == null || value == null || ttl <= 0) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + Math.min(ttl, ttlMillis));
+        int hash = hash(key);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.put(key, entry);
+            generations.incrementAndGet(stripeFor(hash));
+        }
+    }
+
+    /**
+     * 当前写入代次：从数据源加载前调用，加载完成后交给putIfGeneration
+     */
+    public long generation(K key) {
+        return generations.get(stripeFor(hash(key)));
+    }
+
+    /**
+     * 回填缓存：自generation取得后该键未被写入或失效才写入（使用默认TTL），返回是否写入
+     * 同一分条的其他键被写入/失效时也会放弃本次回填（只少缓存一次，不会读到旧值）
+     */
+    public boolean putIfGeneration(K key, V value, long generation) {
+        if (key == null || value == null) {
+            return false;
+        }
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttlMillis);
+        int hash = hash(key);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            if (generations.get(stripeFor(hash)) != generation) {
+                return false;
+            }
+            segment.put(key, entry);
+            return true;
+        }
+    }
+
+    /**
+     * 读取缓存，不存在或已过期时创建并写入（使用默认TTL）
+     * factory在锁外执行，并发未命中时可能各自创建，但只有先写入的值生效并返回给所有调用方
+     * factory执行期间该键被失效时，创建的值只返回给本次调用方，不写入缓存
+     */
+    public V getOrCreate(K key, Function<K, V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        int hash = hash(key);
+        long generation = generations.get(stripeFor(hash));
+        V created = factory.apply(key);
+        long now = System.currentTimeMillis();
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            Entry<V> existing = segment.get(key);
+            if (existing != null && existing.expireAt() >= now) {
+                return existing.value();
+            }
+            if (generations.get(stripeFor(hash)) == generation) {
+                segment.put(key, new Entry<>(created, now + ttlMillis));
+            }
+            return created;
+        }
+    }
+
+    public void invalidate(K key) {
+        int hash = hash(key);
+        Segment<K, V> segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.remove(key);
+            // 键不在缓存中也要递增：可能有并发读正在加载旧值
+            generations.incrementAndGet(stripeFor(hash));
+        }
+    }
+
+    /**
+     * 按值条件批量失效（逐段加锁遍历，不会同时锁住整个缓存；仅用于低频场景）
+     */
+    public void invalidateIf(Predicate<V> predicate) {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                Iterator<Map.Entry<K, Entry<V>>> it = segment.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<K, Entry<V>> next = it.next();
+                    if (predicate.test(next.getValue().value())) {
+                        it.remove();
+                        generations.incrementAndGet(stripeFor(hash(next.getKey())));
+                    }
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < segments.length; i++) {
+            synchronized (segments[i]) {
+                segments[i].clear();
+                // 递增属于该分段的全部分条
+                for (int stripe = i; stripe < GENERATION_STRIPES; stripe += segments.length) {
+                    generations.incrementAndGet(stripe);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 缓存统计信息（监控接口使用）
+     */
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("size", size());
+        stats.put("maxSize", maxSize);
+        stats.put("segments", segments.length);
+        stats.put("ttlMillis", ttlMillis);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        return stats;
+    }
+
+    // 高位参与运算，避免hashCode低位分布不均导致分段倾斜
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        return segmentFor(hash(key));
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static int stripeFor(int hash) {
+        return hash & (GENERATION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.bookmanagement.cache;
+
+/**
+ * long -> int 开放寻址哈希表（线性探测），键值存放在基本类型数组中
+ * 每个条目约12字节（按容量计），相比HashMap<Long, Integer>（每个条目约60~80字节）大幅节省内存和GC压力
+ * 非线程安全，由调用方加锁；删除采用回移（backward shift），不留墓碑
+ */
+public class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    // 空槽标记；键0单独存放
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(4);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * 读取计数，不存在返回0
+     */
+    public int get(long key) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : 0;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return values[slot];
+            }
+            if (existing == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 累加计数，返回累加后的值
+     */
+    public int addTo(long key, int delta) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue += delta;
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                values[slot] += delta;
+                return values[slot];
+            }
+            if (existing == EMPTY) {
+                keys[slot] = key;
+                values[slot] = delta;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return delta;
+            }
+        }
+    }
+
+    /**
+     * 删除条目，返回原值（不存在返回0）
+     */
+    public int remove(long key) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) {
+                return 0;
+            }
+            int old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = 0;
+            size--;
+            return old;
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                int old = values[slot];
+                shiftConflictingKeys(slot);
+                size--;
+                return old;
+            }
+            if (existing == EMPTY) {
+                return 0;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 遍历所有条目
+     */
+    public void forEach(Consumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(EMPTY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * 估算占用字节数（数组按容量计）
+     */
+    public long estimatedBytes() {
+        return 16L + keys.length * 8L + 16L + values.length * 4L + 48L;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+
+    // 删除后把探测链上后续条目回移填补空槽（条目的理想槽位不在空槽与当前槽之间时才能回移）
+    private void shiftConflictingKeys(int gap) {
+        int mask = keys.length - 1;
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == EMPTY) {
+                break;
+            }
+            int ideal = mix(key) & mask;
+            if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity * LOAD_FACTOR < Math.max(1, expectedSize)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // 打散连续ID，避免线性探测聚集
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "LongIntHashMap{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
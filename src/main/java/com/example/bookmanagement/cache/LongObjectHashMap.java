@@ -0,0 +1,214 @@
+package com.example.bookmanagement.cache;
+
+import java.util.function.LongFunction;
+
+/**
+ * long -> 对象 开放寻址哈希表（线性探测），键存放在long[]中，避免Long装箱
+ * 非线程安全，由调用方加锁；值不能为null；删除采用回移（backward shift），不留墓碑
+ */
+public class LongObjectHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+    // 空槽标记；键0单独存放
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeAt;
+    private V zeroValue;
+
+    public LongObjectHashMap() {
+        this(4);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        allocate(LongIntHashMap.capacityFor(expectedSize));
+    }
+
+    /**
+     * 读取，不存在返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongIntHashMap.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return (V) values[slot];
+            }
+            if (existing == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 读取，不存在时创建并放入
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<V> factory) {
+        if (key == EMPTY) {
+            if (zeroValue == null) {
+                zeroValue = factory.apply(key);
+                size++;
+            }
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongIntHashMap.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                return (V) values[slot];
+            }
+            if (existing == EMPTY) {
+                V created = factory.apply(key);
+                keys[slot] = key;
+                values[slot] = created;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return created;
+            }
+        }
+    }
+
+    /**
+     * 写入，返回原值（不存在返回null）
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == EMPTY) {
+            V old = zeroValue;
+            if (old == null) {
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongIntHashMap.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            if (existing == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 删除条目，返回原值（不存在返回null）
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == EMPTY) {
+            V old = zeroValue;
+            if (old != null) {
+                zeroValue = null;
+                size--;
+            }
+            return old;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongIntHashMap.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long existing = keys[slot];
+            if (existing == key) {
+                V old = (V) values[slot];
+                shiftConflictingKeys(slot);
+                size--;
+                return old;
+            }
+            if (existing == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 遍历所有条目
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<V> consumer) {
+        if (zeroValue != null) {
+            consumer.accept(EMPTY, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * 估算自身数组占用字节数（不含值对象，按容量计，引用按压缩指针4字节）
+     */
+    public long estimatedBytes() {
+        return 16L + keys.length * 8L + 16L + values.length * 4L + 48L;
+    }
+
+    @FunctionalInterface
+    public interface Consumer<V> {
+        void accept(long key, V value);
+    }
+
+    // 删除后把探测链上后续条目回移填补空槽（同LongIntHashMap）
+    private void shiftConflictingKeys(int gap) {
+        int mask = keys.length - 1;
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == EMPTY) {
+                break;
+            }
+            int ideal = LongIntHashMap.mix(key) & mask;
+            if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = key;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = LongIntHashMap.mix(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+}
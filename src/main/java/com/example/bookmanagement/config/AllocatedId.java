@@ -0,0 +1,20 @@
+package com.example.bookmanagement.config;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 主键由IdAllocator按号段分配（替代IDENTITY，插入前即知道ID，Hibernate可以批量INSERT）
+ * 用法：@Id @AllocatedId("表名")
+ */
+@IdGeneratorType(AllocatedIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface AllocatedId {
+    // 序列名，与实体表名一致（首次分配时按该表现有最大ID初始化号段）
+    String value();
+}
@@ -0,0 +1,72 @@
+package com.example.bookmanagement.config;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.resource.beans.container.spi.BeanContainer;
+import org.hibernate.resource.beans.container.spi.ContainedBean;
+import org.hibernate.resource.beans.spi.BeanInstanceProducer;
+import org.hibernate.resource.beans.spi.ManagedBeanRegistry;
+
+import java.lang.reflect.Member;
+
+/**
+ * Hibernate主键生成器：委托给Spring管理的IdAllocator（生成器由Hibernate实例化，不能直接注入）
+ * 通过当前SessionFactory的BeanContainer（Spring Boot配置为SpringBeanContainer）查找所属上下文的IdAllocator，
+ * 首次生成主键时才查找，避免与entityManagerFactory的创建顺序形成循环
+ */
+public class AllocatedIdGenerator implements IdentifierGenerator {
+
+    // 使用容器中的单例，不按JPA规范另建实例
+    private static final BeanContainer.LifecycleOptions SINGLETON = new BeanContainer.LifecycleOptions() {
+        @Override
+        public boolean canUseCachedReferences() {
+            return true;
+        }
+
+        @Override
+        public boolean useJpaCompliantCreation() {
+            return false;
+        }
+    };
+
+    // 容器中找不到时不允许Hibernate自行实例化
+    private static final BeanInstanceProducer NO_FALLBACK = new BeanInstanceProducer() {
+        @Override
+        public <B> B produceBeanInstance(Class<B> beanType) {
+            throw new IllegalStateException("Spring容器中没有" + beanType.getSimpleName());
+        }
+
+        @Override
+        public <B> B produceBeanInstance(String name, Class<B> beanType) {
+            return produceBeanInstance(beanType);
+        }
+    };
+
+    private final String sequence;
+    private final BeanContainer beanContainer;
+    private volatile IdAllocator allocator;
+
+    public AllocatedIdGenerator(AllocatedId config, Member idMember, CustomIdGeneratorCreationContext context) {
+        this.sequence = config.value();
+        this.beanContainer = context.getServiceRegistry().getService(ManagedBeanRegistry.class).getBeanContainer();
+        if (beanContainer == null) {
+            throw new IllegalStateException("未配置BeanContainer，无法获取IdAllocator（需要hibernate.resource.beans.container）");
+        }
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return allocator().next(sequence);
+    }
+
+    private IdAllocator allocator() {
+        IdAllocator current = allocator;
+        if (current == null) {
+            ContainedBean<IdAllocator> bean = beanContainer.getBean(IdAllocator.class, SINGLETON, NO_FALLBACK);
+            current = bean.getBeanInstance();
+            allocator = current;
+        }
+        return current;
+    }
+}
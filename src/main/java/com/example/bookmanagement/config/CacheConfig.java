@@ -0,0 +1,56 @@
+package com.example.bookmanagement.config;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.model.IdempotencyRecord;
+import com.example.bookmanagement.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 本地缓存配置（容量、过期时间见application.properties）
+ */
+@Configuration
+public class CacheConfig {
+
+    // 书籍实体缓存（getBookById热点路径）
+    @Bean
+    public BoundedCache<Long, Book> bookCache(
+            @Value("${cache.book.max-size:10000}") int maxSize,
+            @Value("${cache.book.ttl-seconds:300}") long ttlSeconds) {
+        return new BoundedCache<>("book", maxSize, ttlSeconds * 1000);
+    }
+
+    // 已验签JWT缓存（键为Token原文，值为不可变的TokenClaims，单条缓存时长不超过Token剩余有效期）
+    @Bean
+    public BoundedCache<String, JwtService.TokenClaims> jwtClaimsCache(
+            @Value("${cache.jwt.max-size:10000}") int maxSize,
+            @Value("${cache.jwt.ttl-seconds:600}") long ttlSeconds) {
+        return new BoundedCache<>("jwt", maxSize, ttlSeconds * 1000);
+    }
+
+    // 认证用户缓存（JWT过滤器按用户名加载用户；用户变更时主动失效）
+    @Bean
+    public BoundedCache<String, User> principalCache(
+            @Value("${cache.principal.max-size:10000}") int maxSize,
+            @Value("${cache.principal.ttl-seconds:60}") long ttlSeconds) {
+        return new BoundedCache<>("principal", maxSize, ttlSeconds * 1000);
+    }
+
+    // Token吊销表（用户ID -> 安全版本号）
+    @Bean
+    public BoundedCache<Long, Integer> securityVersionCache(
+            @Value("${cache.security-version.max-size:100000}") int maxSize,
+            @Value("${cache.security-version.ttl-seconds:30}") long ttlSeconds) {
+        return new BoundedCache<>("securityVersion", maxSize, ttlSeconds * 1000);
+    }
+
+    // 幂等请求结果缓存（重试命中时无需查库；数据库中的记录为准）
+    @Bean
+    public BoundedCache<String, IdempotencyRecord> idempotencyCache(
+            @Value("${cache.idempotency.max-size:10000}") int maxSize,
+            @Value("${cache.idempotency.ttl-seconds:600}") long ttlSeconds) {
+        return new BoundedCache<>("idempotency", maxSize, ttlSeconds * 1000);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.bookmanagement.config;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 集群调度支持（基于MySQL表，无需额外中间件）：
+ * - 互斥执行：scheduler_locks表记录锁持有者和租约到期时间，条件UPDATE抢锁，节点宕机后租约到期自动释放
+ *   每次加锁生成独立令牌（节点ID:随机串），只有持有令牌的一方能续约/释放；同一节点重复加锁同样互斥
+ *   任务执行期间按租约的1/3周期续约，长任务不会因租约到期被其他节点并发执行
+ * - 任务分片：各节点定时写scheduler_nodes心跳，按存活节点排序确定本节点分片号，
+ *   大任务按 MOD(user_id, 节点数) = 分片号 拆分到各节点执行
+ * - 心跳与续约使用独立线程，不受@Scheduled任务池中长任务的影响
+ * 所有时间比较均使用数据库时间，避免节点间时钟偏差（TIMESTAMPADD在MySQL与H2中通用）
+ */
+@Component
+@RequiredArgsConstructor
+public class ClusterScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ClusterScheduler.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 节点ID，未配置时使用 主机名-随机串
+    @Value("${scheduler.node-id:}")
+    private String configuredNodeId;
+
+    // 心跳超时时间（秒），超过未更新心跳的节点视为下线
+    @Value("${scheduler.node-timeout-seconds:30}")
+    private int nodeTimeoutSeconds;
+
+    // 心跳间隔（毫秒）
+    @Value("${scheduler.heartbeat-interval-millis:10000}")
+    private long heartbeatIntervalMillis;
+
+    private volatile String nodeId;
+
+    // 心跳专用线程
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+    // 锁续约专用线程
+    private final ScheduledExecutorService leaseExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cluster-lease");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean started = new AtomicBoolean();
+    // 本节点当前持有的锁：加锁令牌 -> 锁名称（停机时释放）
+    private final Map<String, String> heldLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 分片信息：index为本节点分片号（从0开始），total为存活节点数
+     */
+    public record Shard(int index, int total) {
+        public boolean owns(long key) {
+            return Math.floorMod(key, total) == index;
+        }
+    }
+
+    public String getNodeId() {
+        if (nodeId == null) {
+            synchronized (this) {
+                if (nodeId == null) {
+                    nodeId = StringUtils.hasText(configuredNodeId) ? configuredNodeId : defaultNodeId();
+                }
+            }
+        }
+        return nodeId;
+    }
+
+    /**
+     * 互斥执行任务：抢到锁才执行，执行期间定时续约，执行完释放；未抢到直接跳过
+     * @param lockName   锁名称（任务名）
+     * @param leaseSeconds 租约时长；执行期间自动续约，节点宕机后最多经过一个租约由其他节点接管
+     * @return 是否在本节点执行
+     */
+    public boolean runExclusive(String lockName, int leaseSeconds, Runnable task) {
+        String token = tryLock(lockName, leaseSeconds);
+        if (token == null) {
+            log.debug("任务锁已被持有，跳过：{}", lockName);
+            return false;
+        }
+        long renewMillis = Math.max(1000L * leaseSeconds / 3, 100L);
+        ScheduledFuture<?> renewal = leaseExecutor.scheduleAtFixedRate(() -> {
+            try {
+                if (!renew(lockName, token, leaseSeconds)) {
+                    log.warn("任务锁续约失败，锁已丢失：{}", lockName);
+                }
+            } catch (Exception e) {
+                log.warn("任务锁续约异常：{}，原因={}", lockName, e.getMessage());
+            }
+        }, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+        try {
+            task.run();
+            return true;
+        } finally {
+            renewal.cancel(false);
+            unlock(lockName, token);
+        }
+    }
+
+    /**
+     * 尝试加锁（租约未到期时任何人都无法加锁，包括本节点）
+     * @return 加锁令牌，未抢到返回null
+     */
+    public String tryLock(String lockName, int leaseSeconds) {
+        String token = getNodeId() + ":" + UUID.randomUUID();
+        // 首次使用时插入锁记录（已存在则忽略）
+        jdbcTemplate.update("INSERT IGNORE INTO scheduler_locks (name, locked_by, locked_until, locked_at) " +
+                "VALUES (?, '', NOW(3), NOW(3))", lockName);
+        int updated = jdbcTemplate.update("UPDATE scheduler_locks SET locked_by = ?, " +
+                        "locked_until = TIMESTAMPADD(SECOND, ?, NOW(3)), locked_at = NOW(3) " +
+                        "WHERE name = ? AND locked_until <= NOW(3)",
+                token, leaseSeconds, lockName);
+        if (updated != 1) {
+            return null;
+        }
+        heldLocks.put(token, lockName);
+        return token;
+    }
+
+    /**
+     * 续约：仅当锁仍由该令牌持有时延长租约，返回false表示锁已丢失
+     */
+    public boolean renew(String lockName, String token, int leaseSeconds) {
+        return jdbcTemplate.update("UPDATE scheduler_locks SET locked_until = TIMESTAMPADD(SECOND, ?, NOW(3)) " +
+                "WHERE name = ? AND locked_by = ?", leaseSeconds, lockName, token) == 1;
+    }
+
+    public void unlock(String lockName, String token) {
+        heldLocks.remove(token);
+        jdbcTemplate.update("UPDATE scheduler_locks SET locked_until = NOW(3) WHERE name = ? AND locked_by = ?",
+                lockName, token);
+    }
+
+    /**
+     * 当前节点的分片信息（按存活节点ID排序后的位置）
+     */
+    public Shard currentShard() {
+        List<String> liveNodes = liveNodes();
+        int index = liveNodes.indexOf(getNodeId());
+        if (index < 0) {
+            // 本节点心跳尚未写入（刚启动），先注册再计算
+            heartbeat();
+            liveNodes = liveNodes();
+            index = liveNodes.indexOf(getNodeId());
+        }
+        // 仍无法确定时按单节点处理（分片重叠由业务侧行锁和处理标记兜底）
+        return index < 0 ? new Shard(0, 1) : new Shard(index, liveNodes.size());
+    }
+
+    private List<String> liveNodes() {
+        return jdbcTemplate.queryForList(
+                "SELECT node_id FROM scheduler_nodes WHERE heartbeat_at > TIMESTAMPADD(SECOND, ?, NOW(3)) " +
+                        "ORDER BY node_id", String.class, -nodeTimeoutSeconds);
+    }
+
+    /**
+     * 容器启动完成后开始心跳（独立线程，固定间隔）
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void startHeartbeat() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        heartbeatExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                heartbeat();
+            } catch (Exception e) {
+                log.warn("调度节点心跳失败：nodeId={}, 原因={}", getNodeId(), e.getMessage());
+            }
+        }, 0, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 节点心跳：写入/刷新本节点记录，并清理长时间未心跳的节点
+     */
+    public void heartbeat() {
+        jdbcTemplate.update("INSERT INTO scheduler_nodes (node_id, heartbeat_at, started_at) VALUES (?, NOW(3), NOW(3)) " +
+                "ON DUPLICATE KEY UPDATE heartbeat_at = NOW(3)", getNodeId());
+        jdbcTemplate.update("DELETE FROM scheduler_nodes WHERE heartbeat_at < TIMESTAMPADD(SECOND, ?, NOW(3))",
+                -nodeTimeoutSeconds * 10);
+    }
+
+    /**
+     * 停机时停止心跳和续约，注销节点并释放本节点持有的锁，其他节点可立即接管
+     */
+    @PreDestroy
+    public void shutdown() {
+        heartbeatExecutor.shutdownNow();
+        leaseExecutor.shutdownNow();
+        try {
+            jdbcTemplate.update("DELETE FROM scheduler_nodes WHERE node_id = ?", getNodeId());
+            for (Map.Entry<String, String> held : heldLocks.entrySet()) {
+                unlock(held.getValue(), held.getKey());
+            }
+        } catch (Exception e) {
+            log.warn("注销调度节点失败：nodeId={}, 原因={}", getNodeId(), e.getMessage());
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
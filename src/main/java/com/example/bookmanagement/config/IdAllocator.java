@@ -0,0 +1,180 @@
+package com.example.bookmanagement.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 主键号段分配器（hi-lo，基于id_blocks表）
+ * - 每个序列在内存中持有一段ID，用完后在一个短事务中取下一段：
+ *   SELECT next_value ... FOR UPDATE，再 UPDATE next_value = next_value + 段长
+ * - 取号段使用独立的小连接池（不占用业务连接池）：调用方往往已在事务中持有一个业务连接，
+ *   若再从业务连接池取连接，并发高时所有连接都被“等号段”的线程占住，连接池会耗尽
+ * - 迁移：某个序列本节点首次取号时，按该表现有MAX(id)初始化（只增不减，可重复执行），已有数据的ID不变
+ * - 节点重启时未用完的号段作废，ID有空洞但不重复
+ * - Hibernate主键生成器通过Spring容器查找本Bean（见AllocatedIdGenerator），同一JVM内多个上下文互不影响
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class IdAllocator {
+    private static final Logger log = LoggerFactory.getLogger(IdAllocator.class);
+
+    // 序列名会拼入初始化SQL，只允许表名字符
+    private static final Pattern SEQUENCE_NAME = Pattern.compile("[a-z][a-z0-9_]{0,63}");
+
+    private final DataSource dataSource;
+    // 由本类创建的连接池，关闭时释放
+    private final HikariDataSource ownedPool;
+    private final int blockSize;
+    private final long seedGap;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    // 本节点持有的号段：[next, limit)
+    private static final class Block {
+        long next;
+        long limit;
+        boolean seeded;
+    }
+
+    @Autowired
+    public IdAllocator(DataSourceProperties dataSourceProperties,
+                       @Value("${id.pool-size:2}") int poolSize,
+                       @Value("${id.block-size:100}") int blockSize,
+                       @Value("${id.seed-gap:0}") long seedGap) {
+        HikariDataSource pool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName("id-allocator");
+        pool.setMaximumPoolSize(Math.max(1, poolSize));
+        pool.setMinimumIdle(1);
+        pool.setAutoCommit(false);
+        this.dataSource = pool;
+        this.ownedPool = pool;
+        this.blockSize = Math.max(1, blockSize);
+        this.seedGap = Math.max(0, seedGap);
+    }
+
+    /**
+     * 使用指定的数据源（不得与业务共用同一个连接池）
+     */
+    public IdAllocator(DataSource dataSource, int blockSize, long seedGap) {
+        this.dataSource = dataSource;
+        this.ownedPool = null;
+        this.blockSize = Math.max(1, blockSize);
+        this.seedGap = Math.max(0, seedGap);
+    }
+
+    /**
+     * 分配一个ID
+     */
+    public long next(String sequence) {
+        Block block = blocks.computeIfAbsent(checkName(sequence), k -> new Block());
+        synchronized (block) {
+            if (block.next >= block.limit) {
+                long end = reserve(sequence, blockSize, block);
+                block.next = end - blockSize;
+                block.limit = end;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * 分配连续的count个ID（JDBC批量写入用），返回第一个ID
+     * 直接从表中取一段，不占用内存号段
+     */
+    public long nextRange(String sequence, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("分配数量必须大于0");
+        }
+        Block block = blocks.computeIfAbsent(checkName(sequence), k -> new Block());
+        synchronized (block) {
+            return reserve(sequence, count, block) - count;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ownedPool != null) {
+            ownedPool.close();
+        }
+    }
+
+    // 取走[返回值 - size, 返回值)这一段（需持有block锁；使用分配器自己的连接，行锁持有到本事务提交）
+    private long reserve(String sequence, int size, Block block) {
+        try (Connection con = dataSource.getConnection()) {
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                if (!block.seeded) {
+                    // 首次使用时插入号段记录（已存在则忽略）
+                    try (PreparedStatement ps = con.prepareStatement(
+                            "INSERT IGNORE INTO id_blocks (name, next_value) VALUES (?, 1)")) {
+                        ps.setString(1, sequence);
+                        ps.executeUpdate();
+                    }
+                }
+                long start;
+                try (PreparedStatement ps = con.prepareStatement(
+                        "SELECT next_value FROM id_blocks WHERE name = ? FOR UPDATE")) {
+                    ps.setString(1, sequence);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new IllegalStateException("号段不存在：" + sequence);
+                        }
+                        start = rs.getLong(1);
+                    }
+                }
+                if (!block.seeded) {
+                    start = Math.max(start, seedStart(con, sequence));
+                }
+                try (PreparedStatement ps = con.prepareStatement(
+                        "UPDATE id_blocks SET next_value = ? WHERE name = ?")) {
+                    ps.setLong(1, start + size);
+                    ps.setString(2, sequence);
+                    ps.executeUpdate();
+                }
+                con.commit();
+                block.seeded = true;
+                return start + size;
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("分配主键号段失败：" + sequence + "，" + e.getMessage(), e);
+        }
+    }
+
+    // 按表中现有最大ID计算起点（号段只会调大，多节点并发执行也安全：其他节点写入的ID都小于已分配的next_value）
+    private long seedStart(Connection con, String sequence) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM " + sequence);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            log.info("主键号段已初始化：sequence={}", sequence);
+            return rs.getLong(1) + 1 + seedGap;
+        }
+    }
+
+    private static String checkName(String sequence) {
+        if (sequence == null || !SEQUENCE_NAME.matcher(sequence).matches()) {
+            throw new IllegalArgumentException("非法的序列名：" + sequence);
+        }
+        return sequence;
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.bookmanagement.config;
 
+import com.example.bookmanagement.model.User;
+import com.example.bookmanagement.security.TokenRevocationRegistry;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,6 +13,7 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -22,6 +26,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
 
     // 核心修正：SKIP_PATHS去掉/api前缀（适配Context Path=/api）
     private static final String[] SKIP_PATHS = {"/auth/login", "/auth/register", "/h2-console/"};
@@ -58,12 +63,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        username = jwtService.extractUsername(jwt);
+        // 每个请求只验签解析一次，无效/过期Token按未认证处理
+        final JwtService.TokenClaims claims;
+        try {
+            claims = jwtService.parseToken(jwt);
+        } catch (JwtException | IllegalArgumentException e) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        username = claims.subject();
 
         if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+            UserDetails userDetails = resolvePrincipal(claims, username);
 
-            if (jwtService.isTokenValid(jwt, userDetails)) {
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -77,4 +90,34 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    /**
+     * 解析当前请求的认证用户，校验不通过返回null
+     * - 新版Token：携带用户ID/角色/安全版本号，只需比对内存吊销表，无需查库
+     * - 旧版Token：按用户名加载用户（走认证用户缓存）
+     */
+    private UserDetails resolvePrincipal(JwtService.TokenClaims claims, String username) {
+        if (claims.hasAuthorizationClaims()) {
+            Long userId = claims.userId();
+            // 禁用、改角色、改密码都会提升版本号，旧Token在此处失效
+            if (!tokenRevocationRegistry.isCurrent(userId, claims.securityVersion())) {
+                return null;
+            }
+            User principal = new User();
+            principal.setId(userId);
+            principal.setUsername(username);
+            principal.setRole(claims.role());
+            principal.setSecurityVersion(claims.securityVersion());
+            return principal;
+        }
+
+        UserDetails userDetails;
+        try {
+            userDetails = this.userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        // 已禁用用户即使持有未过期Token也不予认证
+        return userDetails.isEnabled() && jwtService.isTokenValid(claims, userDetails) ? userDetails : null;
+    }
+}
@@ -1,10 +1,15 @@
 package com.example.bookmanagement.config;
 
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -17,27 +22,85 @@ import java.util.function.Function;
 
 /**
  * JWT工具类 - 确保此类在项目中唯一存在
+ * 签名密钥和解析器启动时构建一次；验签通过的Token以原文为键缓存不可变的TokenClaims（最长缓存到Token过期），
+ * 同一Token的后续请求只需一次字符串哈希查找，无需重复验签和解析
+ * Token携带用户ID、角色、安全版本号，热路径上无需查库即可完成鉴权
  */
 @Service
+@RequiredArgsConstructor
 public class JwtService {
 
+    // 自定义Claim名称
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_SECURITY_VERSION = "sv";
+
+    private final BoundedCache<String, TokenClaims> jwtClaimsCache;
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
+    private Key signInKey;
+    private JwtParser jwtParser;
+
+    /**
+     * 验签通过的Token中鉴权所需的字段（不可变，可在线程间共享缓存）
+     * 旧版Token只有subject，userId/role/securityVersion为null
+     */
+    public record TokenClaims(String subject, Long userId, String role, Integer securityVersion, long expiresAtMillis) {
+
+        static TokenClaims of(Claims claims) {
+            Object userId = claims.get(CLAIM_USER_ID);
+            Object securityVersion = claims.get(CLAIM_SECURITY_VERSION);
+            return new TokenClaims(claims.getSubject(),
+                    userId instanceof Number n ? n.longValue() : null,
+                    claims.get(CLAIM_ROLE, String.class),
+                    securityVersion instanceof Number n ? n.intValue() : null,
+                    claims.getExpiration() == null ? Long.MAX_VALUE : claims.getExpiration().getTime());
+        }
+
+        /**
+         * Token是否携带完整的自包含授权信息（旧版Token只有subject）
+         */
+        public boolean hasAuthorizationClaims() {
+            return userId != null && role != null && securityVersion != null;
+        }
+
+        public boolean isExpired() {
+            return expiresAtMillis < System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+        signInKey = Keys.hmacShaKeyFor(keyBytes);
+        // JwtParser不可变且线程安全，全局复用
+        jwtParser = Jwts.parserBuilder().setSigningKey(signInKey).build();
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return parseToken(token).subject();
     }
 
+    /**
+     * 读取任意Claim（每次完整验签，不走缓存；鉴权热路径请使用parseToken）
+     */
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+        return claimsResolver.apply(jwtParser.parseClaimsJws(token).getBody());
     }
 
     public String generateToken(UserDetails userDetails) {
-        return generateToken(new HashMap<>(), userDetails);
+        Map<String, Object> claims = new HashMap<>();
+        if (userDetails instanceof User user) {
+            claims.put(CLAIM_USER_ID, user.getId());
+            claims.put(CLAIM_ROLE, user.getRole());
+            claims.put(CLAIM_SECURITY_VERSION, user.getSecurityVersion());
+        }
+        return generateToken(claims, userDetails);
     }
 
     public String generateToken(
@@ -58,34 +121,41 @@ public class JwtService {
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * 验签并解析Token（每个请求只需调用一次）
+     * 签名错误、格式错误、已过期时抛出JwtException
+     * 缓存以Token原文为键（不打日志、不落盘），命中时只需一次字符串哈希查找
+     */
+    public TokenClaims parseToken(String token) {
+        TokenClaims cached = jwtClaimsCache.get(token);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+        TokenClaims claims = TokenClaims.of(jwtParser.parseClaimsJws(token).getBody());
+        // 缓存时长不超过Token剩余有效期
+        if (claims.expiresAtMillis() != Long.MAX_VALUE) {
+            jwtClaimsCache.put(token, claims, claims.expiresAtMillis() - System.currentTimeMillis());
+        }
+        return claims;
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    public boolean isTokenValid(String token, UserDetails userDetails) {
+        return isTokenValid(parseToken(token), userDetails);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts
-                .parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * 使用已解析的TokenClaims校验（避免重复验签）
+     */
+    public boolean isTokenValid(TokenClaims claims, UserDetails userDetails) {
+        return userDetails.getUsername().equals(claims.subject()) && !claims.isExpired();
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+    // Token验签缓存统计
+    public Map<String, Object> getCacheStats() {
+        return jwtClaimsCache.stats();
     }
-}
\ No newline at end of file
+}
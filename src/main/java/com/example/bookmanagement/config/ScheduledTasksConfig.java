@@ -1,6 +1,5 @@
 package com.example.bookmanagement.config;
 
-import com.example.bookmanagement.model.User;
 import com.example.bookmanagement.service.UserService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -8,10 +7,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
- * 定时任务配置类：检查用户违规次数并处理
+ * 定时任务配置类：用户违规禁用规则对账
+ * 禁用规则在记录违规时即时执行（UserService.increaseViolationCount），
+ * 此任务只用一条UPDATE兜底修正漂移数据（如手工改库），不再全表加载用户
+ * 多实例部署时通过集群锁保证只在一个节点执行
  */
 @Component
 @RequiredArgsConstructor
@@ -19,28 +19,25 @@ public class ScheduledTasksConfig {
 
     private static final Logger log = LoggerFactory.getLogger(ScheduledTasksConfig.class);
     private final UserService userService;
+    private final ClusterScheduler clusterScheduler;
 
     /**
      * 每天凌晨2点执行检查
      * cron表达式：秒 分 时 日 月 周
      */
-    @Scheduled(cron = "*/10 * * * * *")
+    @Scheduled(cron = "0 0 2 * * *")
     public void checkUserViolations() {
-        log.info("开始执行用户违规次数检查任务");
+        clusterScheduler.runExclusive("user-violation-check", 600, this::reconcileUserViolations);
+    }
 
-        List<User> allUsers = userService.getAllUsers();
-        int disabledCount = 0;
+    private void reconcileUserViolations() {
+        log.info("开始执行用户违规次数检查任务");
 
-        for (User user : allUsers) {
-            // 检查违规次数是否达到3次且用户当前是启用状态
-            if (user.getViolationCount() >= 3 && user.isEnabled()) {
-                userService.toggleUserStatus(user.getId(), false);
-                log.warn("用户违规次数达到3次，已自动禁用：userId={}, username={}, 违规次数={}",
-                        user.getId(), user.getUsername(), user.getViolationCount());
-                disabledCount++;
-            }
+        int disabledCount = userService.disableUsersReachingViolationThreshold();
+        if (disabledCount > 0) {
+            log.warn("发现违规次数达到{}次但仍启用的用户，已自动禁用{}名", UserService.VIOLATION_DISABLE_THRESHOLD, disabledCount);
         }
 
         log.info("用户违规次数检查任务完成，共禁用{}名用户", disabledCount);
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,30 @@
 // filePath: book-management-system/src/main/java/com/example/bookmanagement/config/SchedulerConfig.java
 package com.example.bookmanagement.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 @Configuration
 @EnableScheduling
 public class SchedulerConfig {
     // 启用Spring的定时任务支持
-}
\ No newline at end of file
+    private static final Logger log = LoggerFactory.getLogger(SchedulerConfig.class);
+
+    /**
+     * 定时任务线程池：默认只有1个线程，索引重建、对账等长任务会阻塞其他定时任务，这里按配置扩容
+     * 集群心跳和锁续约不走此线程池（见ClusterScheduler）
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduler.pool-size:4}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setErrorHandler(t -> log.error("定时任务执行失败", t));
+        return scheduler;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.bookmanagement.config;
 
+import com.example.bookmanagement.security.BCryptCostSettings;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,8 +12,8 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -29,18 +31,22 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthFilter;
     private final UserDetailsService userDetailsService;
+    private final UserDetailsPasswordService userDetailsPasswordService;
 
     @Bean
-    public DaoAuthenticationProvider authenticationProvider() {
+    public DaoAuthenticationProvider authenticationProvider(PasswordEncoder passwordEncoder) {
         DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
         authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setPasswordEncoder(passwordEncoder);
+        // 登录成功后，代价与当前配置不一致的哈希按新代价重新编码并回写
+        authProvider.setUserDetailsPasswordService(userDetailsPasswordService);
         return authProvider;
     }
 
+    // BCrypt代价集群统一：配置指定，或首次启动时校准一次并存入数据库
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(BCryptCostSettings costSettings) {
+        return costSettings.createEncoder();
     }
 
     @Bean
@@ -49,7 +55,7 @@ public class SecurityConfig {
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, DaoAuthenticationProvider authenticationProvider) throws Exception {
         http
                 // 启用CORS
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
@@ -59,16 +65,26 @@ public class SecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 // 权限配置（核心修复：路径匹配规则，**必须放在末尾）
                 .authorizeHttpRequests(auth -> auth
+                        // 流式导出写完后的异步派发：请求本身已在首次派发时完成鉴权
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // 放行预检请求、登录/注册、H2控制台
                         .requestMatchers("OPTIONS/**").permitAll()
                         .requestMatchers("/auth/**").permitAll()
                         .requestMatchers("/h2-console/**").permitAll()
                         // 书籍查询接口：匿名可访问
                         .requestMatchers("/books").permitAll()
+                        .requestMatchers("/books/page").permitAll()
+                        .requestMatchers("/books/search").permitAll()
+                        // 排行榜（首页展示）：允许匿名访问
+                        .requestMatchers("/leaderboards/**").permitAll()
                         // 评价接口：登录用户可访问（提交/查看），审核/删除由@PreAuthorize控制
                         .requestMatchers("/comments/**").hasAnyRole("USER", "ADMIN")
                         // 借阅/归还接口：登录用户可访问
                         .requestMatchers("/borrows/**").hasAnyRole("USER", "ADMIN")
+                        // 预约接口：登录用户可访问
+                        .requestMatchers("/holds/**").hasAnyRole("USER", "ADMIN")
+                        // 批量获取书籍（借阅记录页面展示书名）：登录用户可访问
+                        .requestMatchers("/books/batch").hasAnyRole("USER", "ADMIN")
                         // 书籍管理接口：仅管理员（修复路径：/** 替代 /**/*，避免解析错误）
                         .requestMatchers("/books/**").hasRole("ADMIN")
                         // 用户管理：仅管理员
@@ -79,7 +95,7 @@ public class SecurityConfig {
                 // 允许H2控制台frame嵌套
                 .headers(headers -> headers.frameOptions(frameOptions -> frameOptions.disable()))
                 // 设置认证提供者
-                .authenticationProvider(authenticationProvider())
+                .authenticationProvider(authenticationProvider)
                 // 添加JWT过滤器（在用户名密码过滤器之前）
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
 
@@ -97,7 +113,9 @@ public class SecurityConfig {
         // 允许所有请求方法
         config.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         // 允许所有请求头（包含Authorization）
-        config.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Accept"));
+        config.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Accept", "Idempotency-Key"));
+        // 允许前端读取限流响应的等待时间、幂等重放标记
+        config.setExposedHeaders(Arrays.asList("Retry-After", "Idempotent-Replayed"));
         // 允许携带Cookie/Token
         config.setAllowCredentials(true);
         // 预检请求有效期（1小时）
@@ -98,4 +98,34 @@ public class BookCommentController {
                     .body(Map.of("success", false, "message", "删除评价失败：" + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    // 书籍评分统计（平均分、评价数、1-5星分布）
+    @GetMapping("/stats/{bookId}")
+    public ResponseEntity<Map<String, Object>> getScoreStats(@PathVariable Long bookId) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "获取评分统计成功",
+                    "data", bookCommentService.getScoreStats(bookId)
+            ));
+        } catch (Exception e) {
+            log.error("获取评分统计失败, bookId: {}", bookId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("success", false, "message", "获取评分统计失败：" + e.getMessage()));
+        }
+    }
+
+    // 全量重建评分统计（管理员）
+    @PostMapping("/stats/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildScoreStats() {
+        try {
+            int books = bookCommentService.rebuildScoreStats();
+            return ResponseEntity.ok(Map.of("success", true, "message", "评分统计重建完成", "data", books));
+        } catch (Exception e) {
+            log.error("重建评分统计失败", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("success", false, "message", "重建评分统计失败：" + e.getMessage()));
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package com.example.bookmanagement.controller;
 
+import com.example.bookmanagement.dto.BookPageResponse;
 import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.service.BookImportService;
 import com.example.bookmanagement.service.BookService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/books") // 核心修改：去掉/api前缀（Context Path已包含/api）
 @RequiredArgsConstructor
 public class BookController {
     private final BookService bookService;
+    private final BookImportService bookImportService;
 
     // 获取所有书籍（最终路径：/api/books，和前端请求一致）
     @GetMapping
@@ -21,6 +28,57 @@ public class BookController {
         return bookService.getAllBooks();
     }
 
+    // 游标分页获取书籍（最终路径：/api/books/page?category=&author=&publish=&sort=id|borrowCount|avgScore&size=&cursor=）
+    @GetMapping("/page")
+    public ResponseEntity<BookPageResponse> getBookPage(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) String publish,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String cursor) {
+        return ResponseEntity.ok(bookService.getBookPage(category, author, publish, sort, size, cursor));
+    }
+
+    // 全文检索书籍（最终路径：/api/books/search?q=关键词&limit=20）
+    @GetMapping("/search")
+    public List<Book> searchBooks(
+            @RequestParam("q") String keyword,
+            @RequestParam(defaultValue = "20") int limit) {
+        return bookService.searchBooks(keyword, limit);
+    }
+
+    // 按ID批量获取书籍（登录用户，最终路径：/api/books/batch?ids=1,2,3，最多100个）
+    @GetMapping("/batch")
+    public List<Book> getBooksByIds(@RequestParam List<Long> ids) {
+        return bookService.getBooksByIds(ids);
+    }
+
+    // 书籍缓存统计（管理员，最终路径：/api/books/cache/stats）
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(bookService.getCacheStats());
+    }
+
+    // 借阅次数对账（管理员手动触发，节点宕机丢失未写回的借阅次数后使用，最终路径：/api/books/borrow-counts/reconcile）
+    @PostMapping("/borrow-counts/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reconcileBorrowCounts() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            int updated = bookService.reconcileBorrowCounts();
+            result.put("success", true);
+            result.put("message", "借阅次数对账完成");
+            result.put("updated", updated);
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        }
+    }
+
     // 按ID获取书籍（最终路径：/api/books/{id}）
     @GetMapping("/{id}")
     public ResponseEntity<Book> getBookById(@PathVariable Long id) {
@@ -34,6 +92,43 @@ public class BookController {
         return ResponseEntity.ok(bookService.addBook(book));
     }
 
+    // 批量导入书籍（管理员，multipart上传CSV/NDJSON，最终路径：/api/books/import?format=csv|ndjson）
+    // 立即返回任务ID，导入在后台执行
+    @PostMapping("/import")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> importBooks(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            Map<String, Object> job = bookImportService.submit(file, format);
+            result.put("success", true);
+            result.put("message", "导入任务已提交");
+            result.put("job", job);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    // 查询导入任务进度及逐行错误（管理员，最终路径：/api/books/import/{jobId}）
+    @GetMapping("/import/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getImportJob(@PathVariable String jobId) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            result.put("success", true);
+            result.put("job", bookImportService.getJob(jobId));
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(result);
+        }
+    }
+
     // 更新书籍（管理员，最终路径：/api/books）
     @PutMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -48,4 +143,4 @@ public class BookController {
         bookService.deleteBook(id);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+package com.example.bookmanagement.controller;
+
+import com.example.bookmanagement.model.BookHold;
+import com.example.bookmanagement.service.BookHoldService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/holds")
+@RequiredArgsConstructor
+public class BookHoldController {
+    private final BookHoldService bookHoldService;
+
+    // 预约书籍（无库存时排队，最终路径：/api/holds?userId=&bookId=&priority=）
+    // 仅管理员可指定优先级，普通用户一律按0排队
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> placeHold(
+            @RequestParam Long userId,
+            @RequestParam Long bookId,
+            @RequestParam(defaultValue = "0") int priority,
+            Authentication authentication) {
+        boolean admin = authentication.getAuthorities().stream()
+                .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+        return ResponseEntity.ok(bookHoldService.placeHold(userId, bookId, admin ? priority : 0));
+    }
+
+    // 取消预约（最终路径：/api/holds/{id}）
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> cancelHold(@PathVariable Long id) {
+        return ResponseEntity.ok(bookHoldService.cancelHold(id));
+    }
+
+    // 调整排队优先级（管理员，最终路径：/api/holds/{id}/priority?priority=）
+    @PutMapping("/{id}/priority")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Void> updatePriority(@PathVariable Long id, @RequestParam int priority) {
+        bookHoldService.updatePriority(id, priority);
+        return ResponseEntity.ok().build();
+    }
+
+    // 用户的预约列表，排队中的附带排队位置（最终路径：/api/holds/user/{userId}）
+    @GetMapping("/user/{userId}")
+    public List<BookHold> getHoldsByUserId(@PathVariable Long userId) {
+        return bookHoldService.getHoldsByUserId(userId);
+    }
+
+    // 书籍当前排队人数（最终路径：/api/holds/book/{bookId}/queue）
+    @GetMapping("/book/{bookId}/queue")
+    public ResponseEntity<Map<String, Object>> getQueueLength(@PathVariable Long bookId) {
+        return ResponseEntity.ok(Map.of("bookId", bookId, "waiting", bookHoldService.getQueueLength(bookId)));
+    }
+
+    // 预约队列统计（管理员，最终路径：/api/holds/stats）
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(bookHoldService.stats());
+    }
+}
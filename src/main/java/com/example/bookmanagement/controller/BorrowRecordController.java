@@ -1,12 +1,20 @@
 package com.example.bookmanagement.controller;
 
+import com.example.bookmanagement.dto.BatchBorrowRequest;
+import com.example.bookmanagement.dto.BatchReturnRequest;
 import com.example.bookmanagement.model.BorrowRecord;
 import com.example.bookmanagement.service.BorrowRecordService;
+import com.example.bookmanagement.service.ExportService;
+import com.example.bookmanagement.service.IdempotencyException;
+import com.example.bookmanagement.service.IdempotencyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.security.Principal;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +23,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class BorrowRecordController {
     private final BorrowRecordService borrowRecordService;
+    private final IdempotencyService idempotencyService;
+    private final ExportService exportService;
 
     // 按用户ID获取借阅记录（最终路径：/api/borrows/user/{userId}）
     @GetMapping("/user/{userId}")
@@ -22,6 +32,15 @@ public class BorrowRecordController {
         return borrowRecordService.getBorrowsByUserId(userId);
     }
 
+    // 用户借阅历史，含书名/作者/应还日期（最终路径：/api/borrows/user/{userId}/history?size=30&cursor=）
+    @GetMapping("/user/{userId}/history")
+    public ResponseEntity<Map<String, Object>> getBorrowHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(borrowRecordService.getBorrowHistory(userId, cursor, size));
+    }
+
     // 按用户ID获取未归还的借阅记录（最终路径：/api/borrows/user/{userId}/current）
     @GetMapping("/user/{userId}/current")
     public List<BorrowRecord> getCurrentBorrowsByUserId(@PathVariable Long userId) {
@@ -35,17 +54,88 @@ public class BorrowRecordController {
         return borrowRecordService.getAllBorrowRecords();
     }
 
+    // 流式导出全部借阅记录（管理员，最终路径：/api/borrows/export?format=NDJSON|CSV&gzip=false）
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportBorrowRecords(
+            @RequestParam(defaultValue = "NDJSON") ExportService.Format format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return exportService.export(ExportService.Dataset.BORROW_RECORDS, format, gzip);
+    }
+
     // 借阅书籍（登录用户即可，最终路径：/api/borrows）
+    // 携带Idempotency-Key时，超时重试返回首次结果，不会重复借阅
     @PostMapping
     public ResponseEntity<Map<String, Object>> borrowBook(
             @RequestParam Long userId,
-            @RequestParam Long bookId) {
-        return ResponseEntity.ok(borrowRecordService.borrowBook(userId, bookId));
+            @RequestParam Long bookId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Principal principal) {
+        IdempotencyService.Outcome outcome = idempotencyService.execute("borrow", principal.getName(), idempotencyKey,
+                IdempotencyService.fingerprint("POST /borrows", String.valueOf(userId), String.valueOf(bookId)),
+                () -> borrowRecordService.borrowBook(userId, bookId));
+        return toResponse(outcome);
     }
 
     // 归还书籍（登录用户即可，最终路径：/api/borrows/return/{recordId}）
     @PutMapping("/return/{recordId}")
-    public ResponseEntity<Map<String, Object>> returnBook(@PathVariable Long recordId) {
-        return ResponseEntity.ok(borrowRecordService.returnBook(recordId));
+    public ResponseEntity<Map<String, Object>> returnBook(
+            @PathVariable Long recordId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Principal principal) {
+        IdempotencyService.Outcome outcome = idempotencyService.execute("return", principal.getName(), idempotencyKey,
+                IdempotencyService.fingerprint("PUT /borrows/return", String.valueOf(recordId)),
+                () -> borrowRecordService.returnBook(recordId));
+        return toResponse(outcome);
+    }
+
+    // 批量借阅（柜台一次借多本，最终路径：/api/borrows/batch）
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Object>> borrowBooks(
+            @RequestBody BatchBorrowRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Principal principal) {
+        IdempotencyService.Outcome outcome = idempotencyService.execute("borrow-batch", principal.getName(), idempotencyKey,
+                IdempotencyService.fingerprint("POST /borrows/batch", String.valueOf(request.getUserId()),
+                        String.valueOf(request.getBookIds()), String.valueOf(request.isAllOrNothing())),
+                () -> borrowRecordService.borrowBooks(request.getUserId(), request.getBookIds(), request.isAllOrNothing()));
+        return toResponse(outcome);
+    }
+
+    // 批量归还（最终路径：/api/borrows/return/batch）
+    @PutMapping("/return/batch")
+    public ResponseEntity<Map<String, Object>> returnBooks(
+            @RequestBody BatchReturnRequest request,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Principal principal) {
+        IdempotencyService.Outcome outcome = idempotencyService.execute("return-batch", principal.getName(), idempotencyKey,
+                IdempotencyService.fingerprint("PUT /borrows/return/batch", String.valueOf(request.getRecordIds())),
+                () -> borrowRecordService.returnBooks(request.getRecordIds()));
+        return toResponse(outcome);
+    }
+
+    // 幂等缓存统计（管理员，最终路径：/api/borrows/idempotency/stats）
+    @GetMapping("/idempotency/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getIdempotencyStats() {
+        return ResponseEntity.ok(idempotencyService.getCacheStats());
+    }
+
+
+    // Idempotency-Key误用/首次请求处理中：返回对应状态码
+    @ExceptionHandler(IdempotencyException.class)
+    public ResponseEntity<Map<String, Object>> handleIdempotencyException(IdempotencyException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("message", e.getMessage());
+        return ResponseEntity.status(e.getStatus()).body(body);
+    }
+
+    private static ResponseEntity<Map<String, Object>> toResponse(IdempotencyService.Outcome outcome) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (outcome.replayed()) {
+            builder.header(IdempotencyService.REPLAYED_HEADER, "true");
+        }
+        return builder.body(outcome.body());
     }
 }
\ No newline at end of file
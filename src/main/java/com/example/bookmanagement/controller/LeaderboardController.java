@@ -0,0 +1,48 @@
+package com.example.bookmanagement.controller;
+
+import com.example.bookmanagement.service.LeaderboardService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/leaderboards")
+@RequiredArgsConstructor
+public class LeaderboardController {
+    private final LeaderboardService leaderboardService;
+
+    // 排行榜（最终路径：/api/leaderboards/borrows|rating|recent?category=&limit=50）
+    @GetMapping("/{board}")
+    public ResponseEntity<Map<String, Object>> getLeaderboard(
+            @PathVariable String board,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Integer limit) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("success", true);
+            result.put("board", board);
+            result.put("category", category);
+            result.put("data", leaderboardService.top(board, category, limit));
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        }
+    }
+
+    // 排行榜内存索引统计（管理员）
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(leaderboardService.stats());
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.bookmanagement.controller;
+
+import com.example.bookmanagement.service.OutboxDispatcher;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/outbox")
+@RequiredArgsConstructor
+public class OutboxController {
+    private final OutboxDispatcher outboxDispatcher;
+
+    // 发件箱投递统计（管理员，最终路径：/api/outbox/stats）
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(outboxDispatcher.stats());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bookmanagement.controller;
+
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.service.BookService;
+import com.example.bookmanagement.service.RecommendationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/recommendations")
+@RequiredArgsConstructor
+public class RecommendationController {
+    private final RecommendationService recommendationService;
+    private final BookService bookService;
+
+    // 借过这本书的读者还借过（最终路径：/api/recommendations/books/{bookId}?limit=10）
+    @GetMapping("/books/{bookId}")
+    public ResponseEntity<Map<String, Object>> getCoBorrowed(
+            @PathVariable Long bookId,
+            @RequestParam(required = false) Integer limit) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        recommendationService.neighbours(bookId, limit).forEach((otherId, count) -> {
+            Book book;
+            try {
+                // 走书籍缓存；已删除的书跳过
+                book = bookService.getBookById(otherId);
+            } catch (RuntimeException e) {
+                return;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("book", book);
+            item.put("coBorrowCount", count);
+            items.add(item);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("bookId", bookId);
+        result.put("data", items);
+        return ResponseEntity.ok(result);
+    }
+
+    // 推荐矩阵内存占用及最近一次构建耗时（管理员）
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(recommendationService.stats());
+    }
+}
@@ -1,16 +1,25 @@
 package com.example.bookmanagement.controller;
 
+import com.example.bookmanagement.config.JwtService;
 import com.example.bookmanagement.dto.LoginRequest;
 import com.example.bookmanagement.dto.LoginResponse;
 import com.example.bookmanagement.model.User;
+import com.example.bookmanagement.security.LoginAttemptThrottler;
+import com.example.bookmanagement.security.PasswordHashingExecutor;
+import com.example.bookmanagement.security.PrincipalCache;
+import com.example.bookmanagement.security.TokenRevocationRegistry;
+import com.example.bookmanagement.service.ExportService;
 import com.example.bookmanagement.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,13 +33,20 @@ import java.util.Map;
 public class UserController {
     private static final Logger log = LoggerFactory.getLogger(UserController.class);
     private final UserService userService;
+    private final JwtService jwtService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final LoginAttemptThrottler loginAttemptThrottler;
+    private final ExportService exportService;
 
     // 登录（最终路径：/api/auth/login，和前端请求一致）
     @PostMapping("/auth/login")
-    public ResponseEntity<LoginResponse> login(@RequestBody LoginRequest request) {
+    public ResponseEntity<LoginResponse> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest) {
         // 新增日志，验证请求到达Controller
         log.info("收到登录请求：用户名={}", request.getUsername());
-        return ResponseEntity.ok(userService.login(request));
+        // getRemoteAddr为客户端真实IP：来自受信任代理的请求已按X-Forwarded-For还原（server.forward-headers-strategy=native）
+        return ResponseEntity.ok(userService.login(request, httpRequest.getRemoteAddr()));
     }
 
     // 注册（最终路径：/api/auth/register）
@@ -46,6 +62,15 @@ public class UserController {
         return ResponseEntity.ok(userService.getAllUsers());
     }
 
+    // 流式导出全部用户（管理员，不含密码，最终路径：/api/users/export）
+    @GetMapping("/users/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "NDJSON") ExportService.Format format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return exportService.export(ExportService.Dataset.USERS, format, gzip);
+    }
+
     // 按ID获取用户（最终路径：/api/users/{id}）
     @GetMapping("/users/{id}")
     public ResponseEntity<User> getUserById(@PathVariable Long id) {
@@ -83,4 +108,19 @@ public class UserController {
         userService.toggleUserStatus(id, request.get("enabled"));
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    // 认证相关缓存统计（管理员，最终路径：/api/users/security/stats）
+    @GetMapping("/users/security/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getSecurityStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("jwtCache", jwtService.getCacheStats());
+        stats.put("principalCache", principalCache.stats());
+        stats.put("securityVersionCache", tokenRevocationRegistry.stats());
+        stats.put("passwordHashing", passwordHashingExecutor.stats());
+        stats.put("loginThrottle", loginAttemptThrottler.stats());
+        stats.put("passwordCost", userService.getPasswordCostStats());
+        stats.put("export", exportService.stats());
+        return ResponseEntity.ok(stats);
+    }
+}
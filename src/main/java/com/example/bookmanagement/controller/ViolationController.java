@@ -1,19 +1,23 @@
 package com.example.bookmanagement.controller;
 
 import com.example.bookmanagement.model.Violation;
+import com.example.bookmanagement.service.ExportService;
 import com.example.bookmanagement.service.ViolationService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/violations")
 @RequiredArgsConstructor
 public class ViolationController {
     private final ViolationService violationService;
+    private final ExportService exportService;
 
     // 按用户ID获取违规记录
     @GetMapping("/user/{userId}")
@@ -28,6 +32,15 @@ public class ViolationController {
         return violationService.getAllViolations();
     }
 
+    // 流式导出全部违规记录（管理员）
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportViolations(
+            @RequestParam(defaultValue = "NDJSON") ExportService.Format format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return exportService.export(ExportService.Dataset.VIOLATIONS, format, gzip);
+    }
+
     // 添加违规记录（管理员）
     @PostMapping
     @PreAuthorize("hasRole('ADMIN')")
@@ -42,4 +55,4 @@ public class ViolationController {
         violationService.deleteViolation(id);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package com.example.bookmanagement.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量借阅请求：allOrNothing为true时任一本失败则整批回滚
+ */
+@Data
+public class BatchBorrowRequest {
+    private Long userId;
+    private List<Long> bookIds;
+    private boolean allOrNothing;
+}
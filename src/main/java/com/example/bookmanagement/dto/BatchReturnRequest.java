@@ -0,0 +1,13 @@
+package com.example.bookmanagement.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量归还请求
+ */
+@Data
+public class BatchReturnRequest {
+    private List<Long> recordIds;
+}
@@ -0,0 +1,17 @@
+package com.example.bookmanagement.dto;
+
+import com.example.bookmanagement.model.Book;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 书籍游标分页结果：nextCursor为空表示已到最后一页
+ */
+@Data
+public class BookPageResponse {
+    private List<Book> content;
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;
+}
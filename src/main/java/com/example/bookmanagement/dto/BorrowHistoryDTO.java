@@ -0,0 +1,24 @@
+package com.example.bookmanagement.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * 借阅历史（借阅记录 + 书名/作者，一条JOIN查询构造，书籍已删除时书名/作者为空）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BorrowHistoryDTO {
+    private Long recordId;
+    private Long bookId;
+    private String bookName;
+    private String author;
+    private LocalDate borrowTime;
+    private LocalDate dueDate;
+    private LocalDate returnTime;
+    private boolean returned;
+}
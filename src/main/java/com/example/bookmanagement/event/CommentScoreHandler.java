@@ -0,0 +1,38 @@
+package com.example.bookmanagement.event;
+
+import com.example.bookmanagement.model.OutboxEvent;
+import com.example.bookmanagement.service.BookScoreStatsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 评价计分变化事件消费者：按评价当前状态同步计分（增量更新评分聚合，刷新书籍平均分并失效书籍缓存）
+ * 按commentId幂等：重复投递、乱序投递、全量重建后才投递的事件都不会重复计分
+ */
+@Component
+@RequiredArgsConstructor
+public class CommentScoreHandler implements OutboxEventHandler {
+
+    public static final String TYPE = "COMMENT_SCORE_DELTA";
+
+    private final BookScoreStatsService bookScoreStatsService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 事件内容：sign为+1（计入）或-1（移除），仅供排查；实际调整以评价当前状态和计入标记为准
+     */
+    public record Payload(Long commentId, Long bookId, int score, int sign) {
+    }
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public void handle(OutboxEvent event) throws Exception {
+        Payload payload = objectMapper.readValue(event.getPayload(), Payload.class);
+        bookScoreStatsService.syncComment(payload.commentId());
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bookmanagement.event;
+
+import com.example.bookmanagement.model.OutboxEvent;
+
+/**
+ * 发件箱事件消费者
+ * handle在事务内执行，与“标记已投递”一同提交；抛出异常则整体回滚并按退避时间重试
+ */
+public interface OutboxEventHandler {
+
+    // 处理的事件类型
+    String eventType();
+
+    void handle(OutboxEvent event) throws Exception;
+}
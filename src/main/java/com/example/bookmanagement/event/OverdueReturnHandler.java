@@ -0,0 +1,46 @@
+package com.example.bookmanagement.event;
+
+import com.example.bookmanagement.model.OutboxEvent;
+import com.example.bookmanagement.model.Violation;
+import com.example.bookmanagement.service.ViolationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 逾期归还事件消费者：写入违规记录（违规事件再触发用户违规次数累加和禁用规则）
+ */
+@Component
+@RequiredArgsConstructor
+public class OverdueReturnHandler implements OutboxEventHandler {
+
+    public static final String TYPE = "OVERDUE_RETURN";
+
+    private final ViolationService violationService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 事件内容：借阅记录、用户、书籍、归还日期、逾期天数
+     */
+    public record Payload(Long recordId, Long userId, Long bookId, LocalDate returnDate, int overdueDays) {
+    }
+
+    @Override
+    public String eventType() {
+        return TYPE;
+    }
+
+    @Override
+    public void handle(OutboxEvent event) throws Exception {
+        Payload payload = objectMapper.readValue(event.getPayload(), Payload.class);
+        Violation violation = new Violation();
+        violation.setUserId(payload.userId());
+        violation.setBookId(payload.bookId());
+        violation.setViolationDate(payload.returnDate());
+        violation.setReason("逾期归还");
+        violation.setOverdueDays(payload.overdueDays());
+        violationService.addViolation(violation);
+    }
+}
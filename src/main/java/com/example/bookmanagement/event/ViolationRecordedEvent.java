@@ -0,0 +1,7 @@
+package com.example.bookmanagement.event;
+
+/**
+ * 违规记录已写入事件（同步发布，监听方与写入方处于同一事务）
+ */
+public record ViolationRecordedEvent(Long violationId, Long userId) {
+}
@@ -1,13 +1,29 @@
 package com.example.bookmanagement.model;
 
+import com.example.bookmanagement.config.AllocatedId;
 import jakarta.persistence.*;
 import lombok.Data;
 
 @Data
 @Entity
+@Table(indexes = {
+        // 分页筛选/排序用索引（排序字段 + id 作为游标键）
+        @Index(name = "idx_book_category", columnList = "category, id"),
+        @Index(name = "idx_book_author", columnList = "author, id"),
+        @Index(name = "idx_book_publish", columnList = "publish, id"),
+        @Index(name = "idx_book_borrow_count", columnList = "borrowCount, id"),
+        @Index(name = "idx_book_avg_score", columnList = "avgScore, id"),
+        // 筛选 + 排序组合：等值筛选列在前，排序字段 + id 在后，整页按索引顺序读取
+        @Index(name = "idx_book_category_borrow_count", columnList = "category, borrowCount, id"),
+        @Index(name = "idx_book_category_avg_score", columnList = "category, avgScore, id"),
+        @Index(name = "idx_book_author_borrow_count", columnList = "author, borrowCount, id"),
+        @Index(name = "idx_book_author_avg_score", columnList = "author, avgScore, id"),
+        @Index(name = "idx_book_publish_borrow_count", columnList = "publish, borrowCount, id"),
+        @Index(name = "idx_book_publish_avg_score", columnList = "publish, avgScore, id")
+})
 public class Book {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("book")
     private Long id;
 
     @Column(nullable = false)
@@ -30,4 +46,4 @@ public class Book {
     private Double avgScore = 0.0;
 
     private Integer commentCount = 0;
-}
\ No newline at end of file
+}
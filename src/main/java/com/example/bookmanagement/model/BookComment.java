@@ -1,5 +1,6 @@
 package com.example.bookmanagement.model;
 
+import com.example.bookmanagement.config.AllocatedId;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -10,7 +11,7 @@ import java.time.LocalDateTime;
 @Table(name = "book_comments")
 public class BookComment {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("book_comments")
     private Long id;
 
     private Long userId;
@@ -25,6 +26,9 @@ public class BookComment {
 
     private boolean isDeleted = false;
 
+    // 是否已计入评分统计（由评分事件消费者和全量重建维护，每条评价最多计入一次）
+    private boolean scoreCounted = false;
+
     private LocalDateTime createTime;
 
     private LocalDateTime updateTime;
@@ -0,0 +1,57 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 图书预约（无库存时排队，归还的副本按队列顺序分配给预约人）
+ * 状态流转：WAITING（排队）-> READY（已分配副本，待取书）-> FULFILLED（已借出）
+ *          READY超时未取 -> EXPIRED；用户取消 -> CANCELLED
+ */
+@Data
+@Entity
+@Table(name = "book_holds", indexes = {
+        // 队列索引：按书籍取下一个排队预约（优先级高的在前，同优先级先到先得）
+        @Index(name = "idx_hold_queue", columnList = "bookId, status, priority, id"),
+        // 过期扫描索引
+        @Index(name = "idx_hold_expiry", columnList = "status, expiresAt"),
+        @Index(name = "idx_hold_user", columnList = "userId, status")
+})
+public class BookHold {
+    public static final String WAITING = "WAITING";
+    public static final String READY = "READY";
+    public static final String FULFILLED = "FULFILLED";
+    public static final String EXPIRED = "EXPIRED";
+    public static final String CANCELLED = "CANCELLED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long userId;
+
+    private Long bookId;
+
+    @Column(length = 16, nullable = false)
+    private String status = WAITING;
+
+    // 优先级（默认0，管理员可提高）
+    private int priority = 0;
+
+    private LocalDateTime createdAt;
+
+    // 分配到副本的时间
+    private LocalDateTime readyAt;
+
+    // 取书截止时间（READY状态有效）
+    private LocalDateTime expiresAt;
+
+    // 结束时间（已借出/过期/取消）
+    private LocalDateTime closedAt;
+
+    // 排队位置（仅WAITING状态，由内存队列计算，不落库）
+    @Transient
+    private Integer position;
+}
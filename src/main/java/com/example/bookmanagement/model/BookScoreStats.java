@@ -0,0 +1,30 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * 书籍评分聚合（仅统计已审核、未删除的评价）：评分总和、评价数、1-5星分布
+ * 评价新增/审核/删除时增量维护，定时任务全量重建修复偏差
+ */
+@Data
+@Entity
+@Table(name = "book_score_stats")
+public class BookScoreStats {
+    @Id
+    private Long bookId;
+
+    private long scoreSum;
+
+    private long scoreCount;
+
+    private long star1;
+
+    private long star2;
+
+    private long star3;
+
+    private long star4;
+
+    private long star5;
+}
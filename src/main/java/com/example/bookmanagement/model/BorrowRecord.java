@@ -1,16 +1,29 @@
 // filePath: book-management-system/src/main/java/com/example/bookmanagement/model/BorrowRecord.java
 package com.example.bookmanagement.model;
 
+import com.example.bookmanagement.config.AllocatedId;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDate;
 
 @Data
 @Entity
-@Table(name = "borrow_records")
+@Table(name = "borrow_records", indexes = {
+        // 用户借阅历史：按借阅日期倒序游标分页（同时覆盖按用户查询）
+        @Index(name = "idx_borrow_user_time", columnList = "userId, borrowTime, id"),
+        // 借阅次数对账：按书籍计数（覆盖索引）
+        @Index(name = "idx_borrow_book", columnList = "bookId"),
+        // 近期借阅榜对账：按借阅日期范围汇总
+        @Index(name = "idx_borrow_time", columnList = "borrowTime, bookId"),
+        // 逾期扫描索引：只命中“未归还、未标记逾期、已到期”的记录
+        @Index(name = "idx_borrow_overdue", columnList = "isReturned, overdueFlagged, dueDate")
+})
 public class BorrowRecord {
+    // 借阅期限（天）
+    public static final int BORROW_DAYS = 7;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("borrow_records")
     private Long id;
 
     private Long userId;
@@ -19,7 +32,13 @@ public class BorrowRecord {
 
     private LocalDate borrowTime;
 
+    // 应还日期（借阅日期 + 借阅期限）
+    private LocalDate dueDate;
+
     private LocalDate returnTime;
 
     private boolean isReturned = false;
-}
\ No newline at end of file
+
+    // 是否已按逾期处理过（每条记录只记一次逾期违规）
+    private boolean overdueFlagged = false;
+}
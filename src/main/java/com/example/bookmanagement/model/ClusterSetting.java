@@ -0,0 +1,23 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 集群统一配置（各节点启动时读取，保证所有节点使用同一个值，如BCrypt目标代价）
+ */
+@Data
+@Entity
+@Table(name = "cluster_settings")
+public class ClusterSetting {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    @Column(length = 255)
+    private String settingValue;
+
+    private LocalDateTime updatedAt;
+}
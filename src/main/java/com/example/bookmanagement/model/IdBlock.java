@@ -0,0 +1,21 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * 主键号段表（hi-lo分配）：每个序列一行，记录下一个未分配的ID
+ * 各节点每次取走一段ID在内存中分配，用完再取下一段
+ */
+@Data
+@Entity
+@Table(name = "id_blocks")
+public class IdBlock {
+    // 序列名（即表名）
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    // 下一个未分配的ID
+    private long nextValue;
+}
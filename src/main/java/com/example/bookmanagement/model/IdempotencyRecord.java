@@ -0,0 +1,41 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 幂等请求记录（Idempotency-Key -> 首次执行结果）
+ * 客户端超时重试时直接返回首次结果，不重复借阅/归还
+ */
+@Data
+@Entity
+@Table(name = "idempotency_records", indexes = {
+        @Index(name = "idx_idempotency_expires", columnList = "expiresAt")
+})
+public class IdempotencyRecord {
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    // 用户名 + 接口 + Idempotency-Key，不同用户/接口的同名Key互不影响
+    @Id
+    @Column(length = 191)
+    private String requestKey;
+
+    // 请求指纹（方法+路径+参数的SHA-256），同一Key携带不同参数视为误用
+    @Column(length = 64, nullable = false)
+    private String fingerprint;
+
+    // PENDING：执行中；COMPLETED：已完成，responseBody为首次响应
+    @Column(length = 16, nullable = false)
+    private String status;
+
+    @Column(columnDefinition = "TEXT")
+    private String responseBody;
+
+    private LocalDateTime createdAt;
+
+    // 过期后记录被清理，同一Key可再次使用
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,61 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 事务发件箱事件：与业务数据在同一事务中写入，提交后由OutboxDispatcher异步投递给消费者
+ * 状态：PENDING（待投递）-> PROCESSING（已被某节点领取）-> DONE；超过最大重试次数为FAILED
+ */
+@Data
+@Entity
+@Table(name = "outbox_events", indexes = {
+        // 领取索引：按状态和可投递时间取待处理事件
+        @Index(name = "idx_outbox_claim", columnList = "status, availableAt, id"),
+        @Index(name = "idx_outbox_claimed_by", columnList = "claimedBy")
+})
+public class OutboxEvent {
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // 事件类型（决定由哪个消费者处理）
+    @Column(length = 64, nullable = false)
+    private String eventType;
+
+    // 聚合ID（如书籍ID、借阅记录ID），同一聚合的事件在同一线程内按顺序处理
+    private Long aggregateId;
+
+    // 事件内容（JSON）
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(length = 16, nullable = false)
+    private String status = PENDING;
+
+    // 已失败次数
+    private int attempts = 0;
+
+    // 最早可投递时间（失败后按退避时间推迟）
+    private LocalDateTime availableAt;
+
+    // 领取令牌（节点ID + 随机串）与租约到期时间，节点宕机后租约到期可被重新领取
+    @Column(length = 128)
+    private String claimedBy;
+
+    private LocalDateTime claimedUntil;
+
+    @Column(length = 512)
+    private String lastError;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime processedAt;
+}
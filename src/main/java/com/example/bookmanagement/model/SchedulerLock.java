@@ -0,0 +1,27 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务分布式锁（多实例部署时保证同一任务同一时刻只在一个节点执行）
+ */
+@Data
+@Entity
+@Table(name = "scheduler_locks")
+public class SchedulerLock {
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    // 持有锁的节点ID
+    @Column(length = 128)
+    private String lockedBy;
+
+    // 锁租约到期时间（节点宕机后到期自动释放）
+    private LocalDateTime lockedUntil;
+
+    private LocalDateTime lockedAt;
+}
@@ -0,0 +1,22 @@
+package com.example.bookmanagement.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 调度节点心跳（用于统计存活节点并按节点分片任务）
+ */
+@Data
+@Entity
+@Table(name = "scheduler_nodes")
+public class SchedulerNode {
+    @Id
+    @Column(length = 128)
+    private String nodeId;
+
+    private LocalDateTime heartbeatAt;
+
+    private LocalDateTime startedAt;
+}
@@ -1,5 +1,6 @@
 package com.example.bookmanagement.model;
 
+import com.example.bookmanagement.config.AllocatedId;
 import jakarta.persistence.*;
 import lombok.Data;
 import org.springframework.security.core.GrantedAuthority;
@@ -14,7 +15,7 @@ import java.util.List;
 @Table(name = "users")
 public class User implements UserDetails {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("users")
     private Long id;
 
     @Column(unique = true, nullable = false)
@@ -29,6 +30,9 @@ public class User implements UserDetails {
 
     private int violationCount = 0;
 
+    // 安全版本号：禁用、改角色、改密码时+1，签发时写入JWT，版本不一致的Token立即失效
+    private int securityVersion = 0;
+
     // UserDetails接口实现
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -1,5 +1,6 @@
 package com.example.bookmanagement.model;
 
+import com.example.bookmanagement.config.AllocatedId;
 import jakarta.persistence.*;
 import lombok.Data;
 
@@ -10,7 +11,7 @@ import java.time.LocalDate;
 @Table(name = "violations")
 public class Violation {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @AllocatedId("violations")
     private Long id;
 
     private Long userId;
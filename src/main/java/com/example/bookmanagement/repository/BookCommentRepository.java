@@ -1,10 +1,14 @@
 package com.example.bookmanagement.repository;
 
 import com.example.bookmanagement.model.BookComment;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,14 +19,6 @@ public interface BookCommentRepository extends JpaRepository<BookComment, Long>
     // 检查用户是否已评价过该书籍（原有）
     Optional<BookComment> findByUserIdAndBookIdAndIsDeletedFalse(Long userId, Long bookId);
 
-    // 查询书籍的平均评分（原有）
-    @Query("SELECT AVG(c.score) FROM BookComment c WHERE c.bookId = :bookId AND c.isAudit = true AND c.isDeleted = false")
-    Double findAverageScoreByBookId(@Param("bookId") Long bookId);
-
-    // 查询书籍的评价数量（原有）
-    @Query("SELECT COUNT(c) FROM BookComment c WHERE c.bookId = :bookId AND c.isAudit = true AND c.isDeleted = false")
-    Long countByBookId(@Param("bookId") Long bookId);
-
     // 新增：管理员视角 - 某本书所有未删除评价（含未审核）
     List<BookComment> findByBookIdAndIsDeletedFalse(Long bookId);
 
@@ -36,4 +32,43 @@ public interface BookCommentRepository extends JpaRepository<BookComment, Long>
 
     // 新增：查所有未审核、未删除的评论（管理员审核用）
     List<BookComment> findByIsAuditFalseAndIsDeletedFalse();
-}
\ No newline at end of file
+
+    // 条件更新审核状态：仅状态确实变化且未删除时返回1（用于判断是否需要调整评分统计）
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BookComment c SET c.isAudit = :pass, c.updateTime = :now " +
+            "WHERE c.id = :commentId AND c.isAudit <> :pass AND c.isDeleted = false")
+    int updateAuditStatus(@Param("commentId") Long commentId, @Param("pass") boolean pass, @Param("now") LocalDateTime now);
+
+    // 条件逻辑删除：仅未删除时返回1
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BookComment c SET c.isDeleted = true, c.updateTime = :now WHERE c.id = :commentId AND c.isDeleted = false")
+    int markDeleted(@Param("commentId") Long commentId, @Param("now") LocalDateTime now);
+
+    // 加行锁读取（FOR UPDATE，至事务结束）：评分事件消费者与审核/删除、全量重建串行
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM BookComment c WHERE c.id = :id")
+    Optional<BookComment> findByIdForUpdate(@Param("id") Long id);
+
+    // 更新计入标记
+    @Modifying
+    @Query("UPDATE BookComment c SET c.scoreCounted = :counted WHERE c.id = :commentId")
+    int updateScoreCounted(@Param("commentId") Long commentId, @Param("counted") boolean counted);
+
+    // 计入标记是否已初始化（升级后首次启动时全部为false）
+    boolean existsByScoreCountedTrue();
+
+    boolean existsByIsAuditTrueAndIsDeletedFalse();
+
+    // 全量重建：计入标记与评价当前状态对齐（与重建聚合在同一事务，之后投递的事件不会重复计分）
+    String COUNTED_NOW = "COALESCE(is_audit = 1 AND is_deleted = 0 AND score BETWEEN 1 AND 5, 0)";
+
+    @Modifying
+    @Query(value = "UPDATE book_comments SET score_counted = " + COUNTED_NOW +
+            " WHERE score_counted <> " + COUNTED_NOW, nativeQuery = true)
+    int alignAllScoreCounted();
+
+    @Modifying
+    @Query(value = "UPDATE book_comments SET score_counted = " + COUNTED_NOW +
+            " WHERE book_id = :bookId AND score_counted <> " + COUNTED_NOW, nativeQuery = true)
+    int alignScoreCounted(@Param("bookId") Long bookId);
+}
@@ -0,0 +1,63 @@
+package com.example.bookmanagement.repository;
+
+import com.example.bookmanagement.model.BookHold;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface BookHoldRepository extends JpaRepository<BookHold, Long> {
+    List<BookHold> findByUserIdOrderByIdDesc(Long userId);
+
+    List<BookHold> findByStatus(String status);
+
+    long countByUserIdAndStatusIn(Long userId, Collection<String> statuses);
+
+    boolean existsByUserIdAndBookIdAndStatusIn(Long userId, Long bookId, Collection<String> statuses);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT h FROM BookHold h WHERE h.id = :id")
+    Optional<BookHold> findByIdForUpdate(@Param("id") Long id);
+
+    // 取该书下一个排队中的预约并加锁（SKIP LOCKED：并发归还同一本书时各自分配给不同的预约人）
+    @Query(value = "SELECT * FROM book_holds WHERE book_id = :bookId AND status = 'WAITING' " +
+            "ORDER BY priority DESC, id LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<BookHold> findNextWaitingForUpdate(@Param("bookId") Long bookId);
+
+    // 锁定用户在这些书上已分配副本的预约（借阅时直接领取）
+    @Query(value = "SELECT * FROM book_holds WHERE user_id = :userId AND book_id IN (:bookIds) " +
+            "AND status = 'READY' FOR UPDATE", nativeQuery = true)
+    List<BookHold> findReadyForUpdate(@Param("userId") Long userId, @Param("bookIds") Collection<Long> bookIds);
+
+    // 锁定一批已超过取书期限的预约
+    @Query(value = "SELECT * FROM book_holds WHERE status = 'READY' AND expires_at < :now " +
+            "ORDER BY expires_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BookHold> findExpiredForUpdate(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // 有排队预约且当前有库存的书籍（管理员补库存后需要分配）
+    @Query(value = "SELECT DISTINCT h.book_id FROM book_holds h JOIN book b ON b.id = h.book_id " +
+            "WHERE h.status = 'WAITING' AND b.stock > 0", nativeQuery = true)
+    List<Long> findBooksWithWaitingHoldsAndStock();
+
+    // 条件状态迁移：只有处于预期状态时才更新，返回0表示已被并发处理
+    @Modifying
+    @Query("UPDATE BookHold h SET h.status = 'READY', h.readyAt = :now, h.expiresAt = :expiresAt " +
+            "WHERE h.id = :id AND h.status = 'WAITING'")
+    int markReady(@Param("id") Long id, @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("UPDATE BookHold h SET h.status = :status, h.closedAt = :now WHERE h.id IN :ids AND h.status IN :fromStatuses")
+    int close(@Param("ids") Collection<Long> ids, @Param("status") String status,
+              @Param("fromStatuses") Collection<String> fromStatuses, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BookHold h SET h.priority = :priority WHERE h.id = :id AND h.status = 'WAITING'")
+    int updatePriority(@Param("id") Long id, @Param("priority") int priority);
+}
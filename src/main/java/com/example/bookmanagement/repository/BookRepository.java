@@ -1,20 +1,102 @@
 package com.example.bookmanagement.repository;
 
 import com.example.bookmanagement.model.Book;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface BookRepository extends JpaRepository<Book, Long> {
     Optional<Book> findByNameAndAuthor(String name, String author);
 
-    // 更新书籍的平均评分和评价数量
+    // 按评分聚合表刷新书籍的平均评分和评价数量（无需扫描评价表）
     @Modifying
-    @Query("UPDATE Book b SET b.avgScore = :avgScore, b.commentCount = :commentCount WHERE b.id = :bookId")
-    void updateBookScores(@Param("bookId") Long bookId,
-                          @Param("avgScore") Double avgScore,
-                          @Param("commentCount") Long commentCount);
-}
\ No newline at end of file
+    @Query(value = "UPDATE book b LEFT JOIN book_score_stats s ON s.book_id = b.id " +
+            "SET b.avg_score = IF(COALESCE(s.score_count, 0) = 0, 0, s.score_sum / s.score_count), " +
+            "b.comment_count = COALESCE(s.score_count, 0) WHERE b.id = :bookId", nativeQuery = true)
+    int refreshBookScores(@Param("bookId") Long bookId);
+
+    // 按评分聚合表刷新全部书籍（全量重建后使用）
+    @Modifying
+    @Query(value = "UPDATE book b LEFT JOIN book_score_stats s ON s.book_id = b.id " +
+            "SET b.avg_score = IF(COALESCE(s.score_count, 0) = 0, 0, s.score_sum / s.score_count), " +
+            "b.comment_count = COALESCE(s.score_count, 0)", nativeQuery = true)
+    int refreshAllBookScores();
+
+    // ========== 原子库存操作：条件更新一次完成“检查+扣减”，避免并发超借 ==========
+    // 借阅次数不在此处更新，由BorrowCountAccumulator在内存中累加后批量写回
+    // 批量借阅：锁定书籍行并读取库存（FOR UPDATE，至事务结束）
+    @Query(value = "SELECT id, stock FROM book WHERE id IN (:ids) FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockStocks(@Param("ids") Collection<Long> ids);
+
+    // 批量借阅：一条UPDATE扣减多本书的库存
+    @Modifying
+    @Query("UPDATE Book b SET b.stock = b.stock - 1 WHERE b.id IN :ids AND b.stock > 0")
+    int decreaseStocks(@Param("ids") Collection<Long> ids);
+
+    // 批量归还：一条UPDATE为多本书增加相同数量的库存
+    @Modifying
+    @Query("UPDATE Book b SET b.stock = b.stock + :amount WHERE b.id IN :ids")
+    int increaseStocks(@Param("ids") Collection<Long> ids, @Param("amount") int amount);
+
+    // 借出一本：库存>0时库存-1，返回受影响行数（0表示库存不足或书籍不存在）
+    @Modifying
+    @Query("UPDATE Book b SET b.stock = b.stock - 1 WHERE b.id = :bookId AND b.stock > 0")
+    int decreaseStockIfAvailable(@Param("bookId") Long bookId);
+
+    @Modifying
+    @Query("UPDATE Book b SET b.stock = b.stock + 1 WHERE b.id = :bookId")
+    int increaseStock(@Param("bookId") Long bookId);
+
+    // 借阅次数写回：一条UPDATE为多本书增加相同的借阅次数（按增量分组）
+    @Modifying
+    @Query("UPDATE Book b SET b.borrowCount = b.borrowCount + :amount WHERE b.id IN :ids")
+    int increaseBorrowCounts(@Param("ids") Collection<Long> ids, @Param("amount") int amount);
+
+    // 借阅次数对账（管理员手动触发）：低于借阅记录数的补齐，只调高不调低（历史数据与手工维护的值不受影响）
+    @Modifying
+    @Query(value = "UPDATE book b JOIN (SELECT book_id, COUNT(*) AS cnt FROM borrow_records GROUP BY book_id) r " +
+            "ON r.book_id = b.id SET b.borrow_count = r.cnt WHERE b.borrow_count < r.cnt", nativeQuery = true)
+    int reconcileBorrowCounts();
+
+    // ========== 游标分页（keyset）：筛选条件为空时不生效，只取游标之后的数据 ==========
+    String PAGE_FILTER = "(:category IS NULL OR b.category = :category) " +
+            "AND (:author IS NULL OR b.author = :author) " +
+            "AND (:publish IS NULL OR b.publish = :publish) ";
+
+    // 按ID升序
+    @Query("SELECT b FROM Book b WHERE " + PAGE_FILTER +
+            "AND b.id > :lastId ORDER BY b.id ASC")
+    List<Book> findPageOrderById(@Param("category") String category,
+                                 @Param("author") String author,
+                                 @Param("publish") String publish,
+                                 @Param("lastId") Long lastId,
+                                 Pageable pageable);
+
+    // 按借阅次数降序（同值按ID降序，与索引同向，可直接反向扫描索引，无需filesort）
+    @Query("SELECT b FROM Book b WHERE " + PAGE_FILTER +
+            "AND (b.borrowCount < :lastBorrowCount OR (b.borrowCount = :lastBorrowCount AND b.id < :lastId)) " +
+            "ORDER BY b.borrowCount DESC, b.id DESC")
+    List<Book> findPageOrderByBorrowCount(@Param("category") String category,
+                                          @Param("author") String author,
+                                          @Param("publish") String publish,
+                                          @Param("lastBorrowCount") int lastBorrowCount,
+                                          @Param("lastId") Long lastId,
+                                          Pageable pageable);
+
+    // 按平均评分降序（同值按ID降序，同上）
+    @Query("SELECT b FROM Book b WHERE " + PAGE_FILTER +
+            "AND (b.avgScore < :lastAvgScore OR (b.avgScore = :lastAvgScore AND b.id < :lastId)) " +
+            "ORDER BY b.avgScore DESC, b.id DESC")
+    List<Book> findPageOrderByAvgScore(@Param("category") String category,
+                                       @Param("author") String author,
+                                       @Param("publish") String publish,
+                                       @Param("lastAvgScore") Double lastAvgScore,
+                                       @Param("lastId") Long lastId,
+                                       Pageable pageable);
+}
@@ -0,0 +1,45 @@
+package com.example.bookmanagement.repository;
+
+import com.example.bookmanagement.model.BookScoreStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface BookScoreStatsRepository extends JpaRepository<BookScoreStats, Long> {
+
+    // 增量更新：sign为+1（计入）或-1（移除），不存在则插入
+    @Modifying
+    @Query(value = "INSERT INTO book_score_stats (book_id, score_sum, score_count, star1, star2, star3, star4, star5) " +
+            "VALUES (:bookId, :score * :sign, :sign, IF(:score = 1, :sign, 0), IF(:score = 2, :sign, 0), " +
+            "IF(:score = 3, :sign, 0), IF(:score = 4, :sign, 0), IF(:score = 5, :sign, 0)) " +
+            "ON DUPLICATE KEY UPDATE score_sum = score_sum + :score * :sign, score_count = score_count + :sign, " +
+            "star1 = star1 + IF(:score = 1, :sign, 0), star2 = star2 + IF(:score = 2, :sign, 0), " +
+            "star3 = star3 + IF(:score = 3, :sign, 0), star4 = star4 + IF(:score = 4, :sign, 0), " +
+            "star5 = star5 + IF(:score = 5, :sign, 0)", nativeQuery = true)
+    int applyDelta(@Param("bookId") Long bookId, @Param("score") int score, @Param("sign") int sign);
+
+    // 全量重建：清空后按已审核、未删除评价重新聚合
+    @Modifying
+    @Query(value = "DELETE FROM book_score_stats", nativeQuery = true)
+    int deleteAllStats();
+
+    @Modifying
+    @Query(value = "INSERT INTO book_score_stats (book_id, score_sum, score_count, star1, star2, star3, star4, star5) " +
+            "SELECT book_id, SUM(score), COUNT(*), SUM(score = 1), SUM(score = 2), SUM(score = 3), SUM(score = 4), SUM(score = 5) " +
+            "FROM book_comments WHERE is_audit = 1 AND is_deleted = 0 AND score BETWEEN 1 AND 5 GROUP BY book_id",
+            nativeQuery = true)
+    int rebuildAllStats();
+
+    // 单本书重建
+    @Modifying
+    @Query(value = "DELETE FROM book_score_stats WHERE book_id = :bookId", nativeQuery = true)
+    int deleteStats(@Param("bookId") Long bookId);
+
+    @Modifying
+    @Query(value = "INSERT INTO book_score_stats (book_id, score_sum, score_count, star1, star2, star3, star4, star5) " +
+            "SELECT book_id, SUM(score), COUNT(*), SUM(score = 1), SUM(score = 2), SUM(score = 3), SUM(score = 4), SUM(score = 5) " +
+            "FROM book_comments WHERE book_id = :bookId AND is_audit = 1 AND is_deleted = 0 AND score BETWEEN 1 AND 5 " +
+            "GROUP BY book_id", nativeQuery = true)
+    int rebuildStats(@Param("bookId") Long bookId);
+}
@@ -1,14 +1,23 @@
 package com.example.bookmanagement.repository;
 
+import com.example.bookmanagement.dto.BorrowHistoryDTO;
 import com.example.bookmanagement.model.BorrowRecord;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import java.util.List;
-// filePath: book-management-system/src/main/java/com/example/bookmanagement/repository/BorrowRecordRepository.java
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-import com.example.bookmanagement.model.BorrowRecord;
-import org.springframework.data.jpa.repository.JpaRepository;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long> {
     List<BorrowRecord> findByUserId(Long userId);
@@ -17,4 +26,61 @@ public interface BorrowRecordRepository extends JpaRepository<BorrowRecord, Long
     BorrowRecord findByIdAndUserId(Long id, Long userId);
 
     List<BorrowRecord> findByIsReturnedFalseAndBorrowTimeBefore(LocalDate date);
-}
\ No newline at end of file
+
+    // 新增逾期记录：未归还、未处理过、应还日期早于指定日期（走idx_borrow_overdue索引）
+    List<BorrowRecord> findByIsReturnedFalseAndOverdueFlaggedFalseAndDueDateBefore(LocalDate date);
+
+    // 历史数据迁移：补齐应还日期；旧任务已处理过的逾期记录直接标记，避免重复记违规
+    @Modifying
+    @Query(value = "UPDATE borrow_records SET due_date = DATE_ADD(borrow_time, INTERVAL :days DAY), " +
+            "overdue_flagged = (is_returned = 0 AND DATE_ADD(borrow_time, INTERVAL :days DAY) < CURDATE()) " +
+            "WHERE due_date IS NULL AND borrow_time IS NOT NULL", nativeQuery = true)
+    int backfillDueDates(@Param("days") int days);
+
+    // 条件归还：仅未归还的记录才会更新，返回0表示已被归还（防止重复归还）
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BorrowRecord r SET r.isReturned = true, r.returnTime = :returnTime WHERE r.id = :id AND r.isReturned = false")
+    int markReturned(@Param("id") Long id, @Param("returnTime") LocalDate returnTime);
+
+    // 单条归还：锁定借阅记录（FOR UPDATE，至事务结束），与逾期任务互斥，读到的逾期标记为最新值
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM BorrowRecord r WHERE r.id = :id")
+    Optional<BorrowRecord> findByIdForUpdate(@Param("id") Long id);
+
+    // 批量归还：锁定借阅记录（FOR UPDATE，至事务结束）
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM BorrowRecord r WHERE r.id IN :ids")
+    List<BorrowRecord> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    // 批量归还：一条UPDATE标记多条记录已归还
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BorrowRecord r SET r.isReturned = true, r.returnTime = :returnTime WHERE r.id IN :ids AND r.isReturned = false")
+    int markAllReturned(@Param("ids") Collection<Long> ids, @Param("returnTime") LocalDate returnTime);
+
+    // 推荐矩阵构建：只读游标流式读取（用户ID, 书籍ID），按用户聚集、同一用户内按借阅日期最新在前
+    // 主键由号段分配，多节点交错，ID大小不代表借阅先后，按借阅日期排序、ID只用于同日内定序
+    // MySQL驱动下fetchSize=Integer.MIN_VALUE表示逐行流式返回，不把整表读入内存；需在只读事务中消费并关闭
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r.userId, r.bookId FROM BorrowRecord r ORDER BY r.userId, r.borrowTime DESC, r.id DESC")
+    Stream<Object[]> streamUserBookPairs();
+
+    // 用户借阅过的书籍及次数，最近借阅的在前（推荐矩阵增量更新用）
+    @Query("SELECT r.bookId, COUNT(r) FROM BorrowRecord r WHERE r.userId = :userId GROUP BY r.bookId " +
+            "ORDER BY MAX(r.borrowTime) DESC, MAX(r.id) DESC")
+    List<Object[]> countBorrowsByBook(@Param("userId") Long userId);
+
+    // 用户借阅历史（JOIN书籍取书名/作者，按借阅日期倒序、同日按记录ID倒序，(beforeTime, beforeId)为游标）
+    @Query("SELECT new com.example.bookmanagement.dto.BorrowHistoryDTO(r.id, r.bookId, b.name, b.author, " +
+            "r.borrowTime, r.dueDate, r.returnTime, r.isReturned) " +
+            "FROM BorrowRecord r LEFT JOIN Book b ON b.id = r.bookId " +
+            "WHERE r.userId = :userId AND (:beforeTime IS NULL OR r.borrowTime < :beforeTime " +
+            "OR (r.borrowTime = :beforeTime AND r.id < :beforeId)) " +
+            "ORDER BY r.borrowTime DESC, r.id DESC")
+    List<BorrowHistoryDTO> findHistoryByUserId(@Param("userId") Long userId,
+                                               @Param("beforeTime") LocalDate beforeTime,
+                                               @Param("beforeId") Long beforeId,
+                                               Pageable pageable);
+}
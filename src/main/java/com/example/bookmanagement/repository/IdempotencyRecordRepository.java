@@ -0,0 +1,40 @@
+package com.example.bookmanagement.repository;
+
+import com.example.bookmanagement.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    // 占用Key：主键冲突时不插入（返回0），并发请求只有一个能占用成功
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO idempotency_records (request_key, fingerprint, status, created_at, expires_at) " +
+            "VALUES (:requestKey, :fingerprint, 'PENDING', :now, :expiresAt)", nativeQuery = true)
+    int claim(@Param("requestKey") String requestKey, @Param("fingerprint") String fingerprint,
+              @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // 保存首次执行结果
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = 'COMPLETED', r.responseBody = :body " +
+            "WHERE r.requestKey = :requestKey")
+    int complete(@Param("requestKey") String requestKey, @Param("body") String body);
+
+    // 执行失败时释放Key，允许客户端重试
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.requestKey = :requestKey")
+    int release(@Param("requestKey") String requestKey);
+
+    // 删除单个已过期记录（过期Key可重新占用）
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.requestKey = :requestKey AND r.expiresAt < :now")
+    int deleteIfExpired(@Param("requestKey") String requestKey, @Param("now") LocalDateTime now);
+
+    // 定时清理过期记录
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
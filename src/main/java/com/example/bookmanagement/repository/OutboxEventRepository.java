@@ -0,0 +1,47 @@
+package com.example.bookmanagement.repository;
+
+import com.example.bookmanagement.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    List<OutboxEvent> findByClaimedByOrderByIdAsc(String claimedBy);
+
+    long countByStatus(String status);
+
+    // 租约已过期的事件（领取节点宕机）重新变为待投递
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = 'PENDING', e.claimedBy = NULL " +
+            "WHERE e.status = 'PROCESSING' AND e.claimedUntil < :now")
+    int releaseExpiredClaims(@Param("now") LocalDateTime now);
+
+    // 领取一批待投递事件（一条UPDATE打上领取令牌，多节点并发领取互不重复）
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET status = 'PROCESSING', claimed_by = :token, claimed_until = :until " +
+            "WHERE status = 'PENDING' AND available_at <= :now ORDER BY id LIMIT :limit", nativeQuery = true)
+    int claim(@Param("token") String token, @Param("now") LocalDateTime now,
+              @Param("until") LocalDateTime until, @Param("limit") int limit);
+
+    // 投递成功（仍持有领取令牌时才更新，返回0表示租约已丢失）
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = 'DONE', e.processedAt = :now, e.claimedBy = NULL " +
+            "WHERE e.id = :id AND e.claimedBy = :token AND e.status = 'PROCESSING'")
+    int markDone(@Param("id") Long id, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    // 投递失败：记录错误并推迟到退避时间后重试，或标记为FAILED
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.status = :status, e.attempts = e.attempts + 1, e.availableAt = :availableAt, " +
+            "e.lastError = :error, e.claimedBy = NULL WHERE e.id = :id AND e.claimedBy = :token")
+    int markFailed(@Param("id") Long id, @Param("token") String token, @Param("status") String status,
+                   @Param("availableAt") LocalDateTime availableAt, @Param("error") String error);
+
+    // 清理已投递的历史事件
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.status = 'DONE' AND e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
@@ -2,9 +2,49 @@ package com.example.bookmanagement.repository;
 
 import com.example.bookmanagement.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username); // 保留你的自定义方法
-}
\ No newline at end of file
+
+    // 违规次数+1，达到阈值同时禁用并提升安全版本号
+    // （MySQL按SET顺序求值：securityVersion、enabled放在前面，按累加前的次数和状态判断）
+    @Modifying
+    @Query("UPDATE User u SET " +
+            "u.securityVersion = CASE WHEN u.enabled = true AND u.violationCount + 1 >= :threshold " +
+            "THEN u.securityVersion + 1 ELSE u.securityVersion END, " +
+            "u.enabled = CASE WHEN u.violationCount + 1 >= :threshold THEN false ELSE u.enabled END, " +
+            "u.violationCount = u.violationCount + 1 WHERE u.id = :userId")
+    int increaseViolationCount(@Param("userId") Long userId, @Param("threshold") int threshold);
+
+    // 对账：一次性禁用违规次数达到阈值但仍启用的用户
+    @Modifying
+    @Query("UPDATE User u SET u.enabled = false, u.securityVersion = u.securityVersion + 1 " +
+            "WHERE u.enabled = true AND u.violationCount >= :threshold")
+    int disableUsersReachingViolationThreshold(@Param("threshold") int threshold);
+
+    // 提升安全版本号（已签发的Token全部失效）
+    @Modifying
+    @Query("UPDATE User u SET u.securityVersion = u.securityVersion + 1 WHERE u.id = :userId")
+    int increaseSecurityVersion(@Param("userId") Long userId);
+
+    // 回写重新编码的密码哈希（BCrypt代价迁移）
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :userId")
+    int updatePassword(@Param("userId") Long userId, @Param("password") String password);
+
+    // 按BCrypt代价统计账号数（$2a$10$... 第5~6位为代价）
+    @Query(value = "SELECT SUBSTRING(password, 5, 2) AS cost, COUNT(*) AS accounts FROM users " +
+            "WHERE password LIKE '$2%' GROUP BY cost ORDER BY cost", nativeQuery = true)
+    List<Object[]> countAccountsByPasswordCost();
+
+    // 查询当前安全版本号（吊销表未命中时加载）
+    @Query("SELECT u.securityVersion FROM User u WHERE u.id = :userId")
+    Optional<Integer> findSecurityVersionById(@Param("userId") Long userId);
+}
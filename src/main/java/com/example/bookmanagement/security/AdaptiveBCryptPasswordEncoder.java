@@ -0,0 +1,116 @@
+package com.example.bookmanagement.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 可调代价的BCrypt密码编码器
+ * - 目标代价由BCryptCostSettings确定（配置值，或校准一次后存入数据库），集群内所有节点相同
+ * - 新哈希使用目标代价；校验兼容任意代价的已有哈希
+ * - 代价与目标不一致的哈希（更高或更低）标记需要重新编码，由DaoAuthenticationProvider在登录成功后
+ *   调用UserDetailsPasswordService回写，登录耗时逐步收敛到目标代价对应的耗时
+ */
+@Slf4j
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+
+    // $2a$10$... 中的代价字段
+    private static final Pattern COST_PATTERN = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$.{53}$");
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 31;
+    // 校准用的样例密码
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    private final int strength;
+    private final BCryptPasswordEncoder delegate;
+    private final Map<String, Object> details;
+
+    /**
+     * @param strength 集群统一的目标代价
+     * @param details  代价来源及校准结果（用于统计展示）
+     */
+    public AdaptiveBCryptPasswordEncoder(int strength, Map<String, Object> details) {
+        this.strength = clamp(strength);
+        this.delegate = new BCryptPasswordEncoder(this.strength);
+        this.details = new LinkedHashMap<>(details);
+        log.info("BCrypt代价={}（{}）", this.strength, details.getOrDefault("source", "config"));
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        // BCrypt哈希自带代价和盐，任意代价均可校验
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    /**
+     * 代价与目标代价不一致时需要重新编码（可升可降，迁移到集群统一的目标代价）
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int cost = costOf(encodedPassword);
+        return cost > 0 && cost != strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    /**
+     * 解析哈希中的代价，非BCrypt格式返回-1
+     */
+    public static int costOf(String encodedPassword) {
+        if (encodedPassword == null) {
+            return -1;
+        }
+        Matcher m = COST_PATTERN.matcher(encodedPassword);
+        return m.matches() ? Integer.parseInt(m.group(1)) : -1;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>(details);
+        stats.put("strength", strength);
+        return stats;
+    }
+
+    /**
+     * 从下限开始逐级实测，选择耗时不超过目标的最大代价（每升一级耗时约翻倍，超过目标即停止）
+     * 实测结果记入details
+     */
+    public static int calibrate(long targetMillis, int minStrength, int maxStrength, Map<String, Object> details) {
+        int min = clamp(minStrength);
+        int max = Math.max(min, clamp(maxStrength));
+        // 预热，避免首次执行的类加载/JIT开销计入
+        new BCryptPasswordEncoder(MIN_COST).encode(CALIBRATION_PASSWORD);
+
+        int chosen = min;
+        Map<Integer, Long> measured = new LinkedHashMap<>();
+        for (int cost = min; cost <= max; cost++) {
+            long start = System.nanoTime();
+            new BCryptPasswordEncoder(cost).encode(CALIBRATION_PASSWORD);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            measured.put(cost, millis);
+            if (millis > targetMillis) {
+                break;
+            }
+            chosen = cost;
+        }
+        details.put("targetMillis", targetMillis);
+        details.put("measuredMillis", measured);
+        log.info("BCrypt代价校准：目标={}ms，实测={}，选用代价={}", targetMillis, measured, chosen);
+        return chosen;
+    }
+
+    private static int clamp(int cost) {
+        return Math.max(MIN_COST, Math.min(MAX_COST, cost));
+    }
+}
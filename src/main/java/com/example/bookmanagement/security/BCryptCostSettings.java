@@ -0,0 +1,96 @@
+package com.example.bookmanagement.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BCrypt目标代价（集群统一）
+ * - 未启用校准：取配置的strength
+ * - 启用校准：首个启动的节点按目标耗时实测，写入cluster_settings，其余节点及之后的重启直接沿用该值
+ * - recalibrate=true：本节点重新实测并覆盖（更换硬件后显式执行一次，之后关闭）
+ * 所有节点新哈希使用同一代价，已有哈希在登录后向该代价迁移（可升可降），不会因各节点校准结果不同而来回重写
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class BCryptCostSettings {
+
+    static final String SETTING_NAME = "bcrypt.cost";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int strength;
+    private final boolean calibrate;
+    private final boolean recalibrate;
+    private final long targetMillis;
+    private final int minStrength;
+    private final int maxStrength;
+
+    public BCryptCostSettings(JdbcTemplate jdbcTemplate,
+                              @Value("${security.bcrypt.strength:10}") int strength,
+                              @Value("${security.bcrypt.calibrate:false}") boolean calibrate,
+                              @Value("${security.bcrypt.recalibrate:false}") boolean recalibrate,
+                              @Value("${security.bcrypt.target-millis:250}") long targetMillis,
+                              @Value("${security.bcrypt.min-strength:10}") int minStrength,
+                              @Value("${security.bcrypt.max-strength:14}") int maxStrength) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.strength = strength;
+        this.calibrate = calibrate;
+        this.recalibrate = recalibrate;
+        this.targetMillis = targetMillis;
+        this.minStrength = minStrength;
+        this.maxStrength = maxStrength;
+    }
+
+    /**
+     * 按集群统一的目标代价创建编码器
+     */
+    public AdaptiveBCryptPasswordEncoder createEncoder() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("calibrated", calibrate);
+        if (!calibrate) {
+            details.put("source", "config");
+            return new AdaptiveBCryptPasswordEncoder(strength, details);
+        }
+
+        Integer stored = recalibrate ? null : load();
+        if (stored != null) {
+            details.put("source", "cluster");
+            return new AdaptiveBCryptPasswordEncoder(stored, details);
+        }
+        int measured = AdaptiveBCryptPasswordEncoder.calibrate(targetMillis, minStrength, maxStrength, details);
+        if (recalibrate) {
+            jdbcTemplate.update("INSERT INTO cluster_settings (name, setting_value, updated_at) VALUES (?, ?, NOW()) " +
+                    "ON DUPLICATE KEY UPDATE setting_value = VALUES(setting_value), updated_at = NOW()",
+                    SETTING_NAME, String.valueOf(measured));
+            log.warn("BCrypt目标代价已重新校准并写入集群配置：{}", measured);
+        } else {
+            // 多个节点同时首次启动时以先写入者为准
+            jdbcTemplate.update("INSERT IGNORE INTO cluster_settings (name, setting_value, updated_at) VALUES (?, ?, NOW())",
+                    SETTING_NAME, String.valueOf(measured));
+        }
+        Integer cost = load();
+        details.put("source", cost != null && cost == measured ? "calibrated" : "cluster");
+        return new AdaptiveBCryptPasswordEncoder(cost == null ? measured : cost, details);
+    }
+
+    private Integer load() {
+        List<String> values = jdbcTemplate.queryForList(
+                "SELECT setting_value FROM cluster_settings WHERE name = ?", String.class, SETTING_NAME);
+        if (values.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(values.get(0).trim());
+        } catch (NumberFormatException e) {
+            log.warn("集群配置{}不是有效的代价：{}，重新校准", SETTING_NAME, values.get(0));
+            return null;
+        }
+    }
+}
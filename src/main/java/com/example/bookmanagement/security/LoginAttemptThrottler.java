@@ -0,0 +1,83 @@
+package com.example.bookmanagement.security;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录尝试限流（固定时间窗口，按用户名和客户端IP分别计数）
+ * 超限的请求在进入密码哈希线程池之前直接拒绝，不消耗BCrypt计算
+ * 计数器存放在有界缓存中，条目过期即窗口重置
+ */
+@Slf4j
+@Component
+public class LoginAttemptThrottler {
+
+    private final BoundedCache<String, Window> windows;
+    private final long windowMillis;
+    private final int maxPerUsername;
+    private final int maxPerIp;
+
+    private final LongAdder throttled = new LongAdder();
+
+    private record Window(long startedAt, AtomicInteger attempts) {
+    }
+
+    public LoginAttemptThrottler(
+            @Value("${security.login.window-seconds:60}") long windowSeconds,
+            @Value("${security.login.max-attempts-per-username:10}") int maxPerUsername,
+            @Value("${security.login.max-attempts-per-ip:30}") int maxPerIp,
+            @Value("${security.login.max-tracked-keys:100000}") int maxTrackedKeys) {
+        this.windowMillis = windowSeconds * 1000;
+        this.maxPerUsername = maxPerUsername;
+        this.maxPerIp = maxPerIp;
+        this.windows = new BoundedCache<>("loginAttempts", maxTrackedKeys, windowMillis);
+    }
+
+    /**
+     * 记录一次登录尝试，超过用户名或IP的窗口上限时抛出TooManyRequestsException
+     */
+    public void acquire(String username, String clientIp) {
+        if (username != null) {
+            check("u:" + username, maxPerUsername);
+        }
+        if (clientIp != null) {
+            check("ip:" + clientIp, maxPerIp);
+        }
+    }
+
+    /**
+     * 登录成功后清零该用户名的计数（IP计数保留）
+     */
+    public void reset(String username) {
+        if (username != null) {
+            windows.invalidate("u:" + username);
+        }
+    }
+
+    private void check(String key, int limit) {
+        Window window = windows.getOrCreate(key, k -> new Window(System.currentTimeMillis(), new AtomicInteger()));
+        if (window.attempts().incrementAndGet() > limit) {
+            throttled.increment();
+            long remainingMillis = window.startedAt() + windowMillis - System.currentTimeMillis();
+            log.warn("登录尝试过于频繁：key={}，窗口上限={}", key, limit);
+            throw new TooManyRequestsException("登录尝试过于频繁，请稍后再试", (remainingMillis + 999) / 1000);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("windowSeconds", windowMillis / 1000);
+        stats.put("maxAttemptsPerUsername", maxPerUsername);
+        stats.put("maxAttemptsPerIp", maxPerIp);
+        stats.put("trackedKeys", windows.size());
+        stats.put("throttled", throttled.sum());
+        return stats;
+    }
+}
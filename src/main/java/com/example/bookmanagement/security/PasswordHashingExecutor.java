@@ -0,0 +1,143 @@
+package com.example.bookmanagement.security;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 密码哈希专用线程池（BCrypt校验/加密）
+ * - 线程数、队列长度均有上限，CPU密集的哈希不再占满Tomcat请求线程
+ * - 队列已满立即拒绝（429 + Retry-After），不排队拖垮其他接口
+ * - 记录哈希耗时、排队耗时、队列深度、拒绝次数
+ */
+@Slf4j
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final int queueCapacity;
+    private final long waitTimeoutMillis;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Long::max, 0);
+
+    public PasswordHashingExecutor(
+            @Value("${security.hashing.threads:0}") int threads,
+            @Value("${security.hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${security.hashing.wait-timeout-millis:3000}") long waitTimeoutMillis) {
+        // 0表示按CPU核数的一半，至少保留一半CPU给其他请求
+        this.threads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("密码哈希线程池：线程数={}，队列长度={}", this.threads, this.queueCapacity);
+    }
+
+    /**
+     * 在哈希线程池中执行任务并等待结果（任务内抛出的运行时异常原样抛出）
+     */
+    public <T> T execute(String operation, Callable<T> task) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                queueNanos.add(startedAt - submittedAt);
+                try {
+                    return task.call();
+                } finally {
+                    long elapsed = System.nanoTime() - startedAt;
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulate(elapsed);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warn("密码哈希线程池已满，拒绝请求：operation={}，队列深度={}", operation, executor.getQueue().size());
+            throw new TooManyRequestsException("系统繁忙，请稍后重试", estimateRetryAfterSeconds());
+        }
+
+        try {
+            return future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            log.warn("密码哈希等待超时：operation={}，超时={}ms", operation, waitTimeoutMillis);
+            throw new TooManyRequestsException("系统繁忙，请稍后重试", estimateRetryAfterSeconds());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new RuntimeException("请求已中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    // 按平均哈希耗时估算排空当前队列所需时间
+    private long estimateRetryAfterSeconds() {
+        long count = completed.sum();
+        double avgMillis = count == 0 ? 100.0 : hashNanos.sum() / 1_000_000.0 / count;
+        double drainMillis = (executor.getQueue().size() + threads) * avgMillis / threads;
+        return (long) Math.ceil(drainMillis / 1000.0);
+    }
+
+    /**
+     * 线程池统计信息（监控接口使用）
+     */
+    public Map<String, Object> stats() {
+        long count = completed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", threads);
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("completed", count);
+        stats.put("rejected", rejected.sum());
+        stats.put("timeouts", timeouts.sum());
+        stats.put("avgHashMillis", count == 0 ? 0.0 : hashNanos.sum() / 1_000_000.0 / count);
+        stats.put("maxHashMillis", maxHashNanos.get() / 1_000_000.0);
+        stats.put("avgQueueWaitMillis", count == 0 ? 0.0 : queueNanos.sum() / 1_000_000.0 / count);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
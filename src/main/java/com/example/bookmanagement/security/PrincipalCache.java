@@ -0,0 +1,86 @@
+package com.example.bookmanagement.security;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.model.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 认证用户缓存（按用户名缓存User，避免每个请求都查库）
+ * 用户信息、状态、违规次数变化时必须失效，保证禁用用户立即失去访问权限
+ * 失效在调用时和事务提交后各执行一次，防止提交前被并发请求回填旧数据
+ */
+@Component
+@RequiredArgsConstructor
+public class PrincipalCache {
+
+    private final BoundedCache<String, User> principalCache;
+
+    public User get(String username) {
+        User cached = principalCache.get(username);
+        return cached == null ? null : copyOf(cached);
+    }
+
+    public void put(User user) {
+        if (user != null && user.getUsername() != null) {
+            principalCache.put(user.getUsername(), copyOf(user));
+        }
+    }
+
+    public void evict(String username) {
+        if (username == null) {
+            return;
+        }
+        principalCache.invalidate(username);
+        afterCommit(() -> principalCache.invalidate(username));
+    }
+
+    public void evictUserId(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        principalCache.invalidateIf(user -> userId.equals(user.getId()));
+        afterCommit(() -> principalCache.invalidateIf(user -> userId.equals(user.getId())));
+    }
+
+    public void evictUserIds(Collection<Long> userIds) {
+        Set<Long> ids = new HashSet<>(userIds);
+        principalCache.invalidateIf(user -> ids.contains(user.getId()));
+        afterCommit(() -> principalCache.invalidateIf(user -> ids.contains(user.getId())));
+    }
+
+    public void evictAll() {
+        principalCache.invalidateAll();
+        afterCommit(principalCache::invalidateAll);
+    }
+
+    public Map<String, Object> stats() {
+        return principalCache.stats();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    // 缓存与返回均使用副本，避免调用方修改共享对象
+    private static User copyOf(User source) {
+        User copy = new User();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.bookmanagement.security;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+
+/**
+ * Token吊销表：内存中维护 用户ID -> 当前安全版本号
+ * JWT中携带签发时的版本号，与当前版本不一致即视为已吊销
+ * - 本节点变更时立即失效对应条目；其他节点在条目过期（cache.security-version.ttl-seconds）后重新加载
+ * - 未命中时按主键查一次版本号（只查一列），之后同一用户的请求无需查库
+ */
+@Component
+@RequiredArgsConstructor
+public class TokenRevocationRegistry {
+
+    // 用户不存在时的占位版本（任何Token都不会匹配）
+    private static final int MISSING_USER = -1;
+
+    private final BoundedCache<Long, Integer> securityVersionCache;
+    private final UserRepository userRepository;
+
+    /**
+     * Token中的版本号是否仍有效
+     */
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        Integer current = securityVersionCache.get(userId);
+        if (current == null) {
+            current = userRepository.findSecurityVersionById(userId).orElse(MISSING_USER);
+            securityVersionCache.put(userId, current);
+        }
+        return current == tokenVersion;
+    }
+
+    /**
+     * 用户安全版本号已变化（数据库已更新），失效内存条目
+     */
+    public void revoke(Long userId) {
+        securityVersionCache.invalidate(userId);
+        afterCommit(() -> securityVersionCache.invalidate(userId));
+    }
+
+    public void revokeAll() {
+        securityVersionCache.invalidateAll();
+        afterCommit(securityVersionCache::invalidateAll);
+    }
+
+    public Map<String, Object> stats() {
+        return securityVersionCache.stats();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.bookmanagement.security;
+
+/**
+ * 请求过多（登录限流 / 密码哈希线程池已满 / 导出名额已满 / 导入排队已满），由TooManyRequestsAdvice统一转换为 429 + Retry-After
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    // 建议客户端等待的秒数
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -3,30 +3,57 @@ package com.example.bookmanagement.security;
 import com.example.bookmanagement.model.User;
 import com.example.bookmanagement.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * 用户详情服务实现（唯一版本，解决重复类问题）
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     /**
      * 根据用户名查询用户（登录核心方法）
+     * 先查认证用户缓存，未命中再查库并回填
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        User cached = principalCache.get(username);
+        if (cached != null) {
+            return cached;
+        }
+
         // 从数据库查询用户，不存在则抛异常（整合两个版本的简洁性+完整性）
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("用户不存在: " + username));
+        principalCache.put(user);
 
         // 返回自定义User实体（已实现UserDetails接口，权限验证核心）
         return user;
     }
-}
\ No newline at end of file
+
+    /**
+     * 登录成功后回写重新编码的密码（仅BCrypt代价迁移到目标代价，明文未变，不吊销已签发Token）
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = (User) userDetails;
+        userRepository.updatePassword(user.getId(), newPassword);
+        principalCache.evict(user.getUsername());
+        user.setPassword(newPassword);
+        log.info("密码哈希代价已调整：userId={}，代价={}", user.getId(),
+                AdaptiveBCryptPasswordEncoder.costOf(newPassword));
+        return user;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.bookmanagement.service;
 
 import com.example.bookmanagement.dto.CommentDTO;
+import com.example.bookmanagement.event.CommentScoreHandler;
 import com.example.bookmanagement.model.Book;
 import com.example.bookmanagement.model.BookComment;
 import com.example.bookmanagement.model.User;
@@ -22,6 +23,8 @@ public class BookCommentService {
     private final BookCommentRepository bookCommentRepository;
     private final BookService bookService;
     private final UserService userService;
+    private final BookScoreStatsService bookScoreStatsService;
+    private final OutboxService outboxService;
 
     /**
      * 优化：根据书籍ID + 当前登录用户获取可见评价
@@ -34,8 +37,10 @@ public class BookCommentService {
 
         // 获取当前登录用户信息
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = auth.getName(); // 从Security上下文获取当前用户名
-        User currentUser = userService.getUserByUsername(username);
+        // 优先使用认证时已加载的用户，避免重复查库
+        User currentUser = auth.getPrincipal() instanceof User principal
+                ? principal
+                : userService.getUserByUsername(auth.getName());
 
         // 管理员视角：返回所有未删除评价
         if ("ROLE_ADMIN".equals(currentUser.getRole())) {
@@ -100,11 +105,9 @@ public class BookCommentService {
             comment.setUpdateTime(LocalDateTime.now());
             comment.setDeleted(false);
 
+            // 新评价未审核，不计入评分统计（审核通过时再增量计入）
             bookCommentRepository.save(comment);
 
-            // 更新书籍的评分统计（仅统计已审核评价，审核通过时再更新）
-            updateBookScoreStatistics(bookId);
-
             result.put("success", true);
             result.put("message", "评价提交成功，等待审核");
             result.put("comment", comment);
@@ -117,23 +120,15 @@ public class BookCommentService {
     }
 
     /**
-     * 更新书籍的评分统计信息（原有）
+     * 更新书籍的评分统计信息（按评价表重建单本书的聚合，用于修复）
      */
     @Transactional
     public void updateBookScoreStatistics(Long bookId) {
-        Double avgScore = bookCommentRepository.findAverageScoreByBookId(bookId);
-        Long commentCount = bookCommentRepository.countByBookId(bookId);
-
-        if (avgScore == null) {
-            avgScore = 0.0;
-        }
-
-        // 更新书籍的平均评分和评价数量
-        bookService.updateBookScores(bookId, avgScore, commentCount);
+        bookScoreStatsService.rebuild(bookId);
     }
 
     /**
-     * 审核评价（管理员功能）（原有）
+     * 审核评价（管理员功能）：状态变化时增量调整评分统计（通过计入，驳回已通过的评价则移除）
      */
     @Transactional
     public Map<String, Object> auditComment(Long commentId, boolean pass) {
@@ -143,14 +138,11 @@ public class BookCommentService {
             BookComment comment = bookCommentRepository.findById(commentId)
                     .orElseThrow(() -> new RuntimeException("评价不存在"));
 
-            comment.setAudit(pass);
-            // 修复：使用LocalDateTime替代Date
-            comment.setUpdateTime(LocalDateTime.now());
-            bookCommentRepository.save(comment);
-
-            // 如果审核通过，更新书籍评分统计
-            if (pass) {
-                updateBookScoreStatistics(comment.getBookId());
+            // 条件更新：审核状态确实变化时才调整统计，重复审核不会重复计入
+            // 统计调整写入发件箱，提交后异步执行
+            if (bookCommentRepository.updateAuditStatus(commentId, pass, LocalDateTime.now()) == 1
+                    && comment.getScore() != null) {
+                publishScoreDelta(comment, pass ? 1 : -1);
             }
 
             result.put("success", true);
@@ -164,24 +156,22 @@ public class BookCommentService {
     }
 
     /**
-     * 删除评价（管理员功能）（原有）
+     * 删除评价（管理员功能）：已计入统计的评价删除时增量移除
+     * 评价行加锁读取：并发的审核通过须先提交，这里读到的审核状态为最新值，计入/移除事件成对发布
      */
     @Transactional
     public Map<String, Object> deleteComment(Long commentId) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            BookComment comment = bookCommentRepository.findById(commentId)
+            BookComment comment = bookCommentRepository.findByIdForUpdate(commentId)
                     .orElseThrow(() -> new RuntimeException("评价不存在"));
 
-            // 逻辑删除
-            comment.setDeleted(true);
-            // 修复：使用LocalDateTime替代Date
-            comment.setUpdateTime(LocalDateTime.now());
-            bookCommentRepository.save(comment);
-
-            // 更新书籍评分统计
-            updateBookScoreStatistics(comment.getBookId());
+            // 逻辑删除（条件更新，重复删除不会重复扣减）
+            if (bookCommentRepository.markDeleted(commentId, LocalDateTime.now()) == 1
+                    && BookScoreStatsService.isCounted(comment)) {
+                publishScoreDelta(comment, -1);
+            }
 
             result.put("success", true);
             result.put("message", "评价删除成功");
@@ -192,4 +182,24 @@ public class BookCommentService {
 
         return result;
     }
-}
\ No newline at end of file
+
+    // 评分统计增量以发件箱事件与评价状态变更一同提交
+    private void publishScoreDelta(BookComment comment, int sign) {
+        outboxService.append(CommentScoreHandler.TYPE, comment.getBookId(),
+                new CommentScoreHandler.Payload(comment.getId(), comment.getBookId(), comment.getScore(), sign));
+    }
+
+    /**
+     * 书籍评分统计（平均分、评价数、1-5星分布）
+     */
+    public Map<String, Object> getScoreStats(Long bookId) {
+        return bookScoreStatsService.getStats(bookId);
+    }
+
+    /**
+     * 全量重建评分统计（管理员修复用）
+     */
+    public int rebuildScoreStats() {
+        return bookScoreStatsService.rebuildAll();
+    }
+}
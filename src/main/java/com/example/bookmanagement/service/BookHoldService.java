@@ -0,0 +1,367 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.model.BookHold;
+import com.example.bookmanagement.repository.BookHoldRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 图书预约服务（无库存时排队，归还时按队列分配副本）
+ * - 队列持久化在book_holds表；归还/过期/取消时在同一事务内锁定下一个预约（SKIP LOCKED）并标记READY，
+ *   副本直接保留给预约人，不进入库存，避免归还后被其他人抢借
+ * - 预约人借阅时领取READY预约（不扣库存）；超过取书期限未取则过期，副本顺延给下一位或回到库存
+ * - 内存中镜像排队队列，排队位置、队列长度查询不访问数据库；定期从库重载，与其他节点的变更保持一致
+ */
+@Service
+@RequiredArgsConstructor
+public class BookHoldService {
+    private static final Logger log = LoggerFactory.getLogger(BookHoldService.class);
+
+    private static final List<String> ACTIVE_STATUSES = List.of(BookHold.WAITING, BookHold.READY);
+    // 过期处理每批数量
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    private final BookHoldRepository bookHoldRepository;
+    private final BookService bookService;
+    private final ClusterScheduler clusterScheduler;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${hold.pickup-days:3}")
+    private int pickupDays;
+
+    @Value("${hold.max-active-per-user:5}")
+    private int maxActivePerUser;
+
+    // ========== 内存队列镜像（书籍ID -> 排队中的预约，按优先级降序、ID升序） ==========
+    private record QueueEntry(long holdId, long bookId, int priority) {
+    }
+
+    private static final Comparator<QueueEntry> QUEUE_ORDER = Comparator.comparingInt(QueueEntry::priority).reversed()
+            .thenComparingLong(QueueEntry::holdId);
+
+    private final Object mirrorLock = new Object();
+    private Map<Long, NavigableSet<QueueEntry>> waitingByBook = new HashMap<>();
+    private Map<Long, QueueEntry> waitingById = new HashMap<>();
+
+    /**
+     * 预约书籍（仅无库存时可预约，每人同一本书只能有一个有效预约）
+     */
+    public Map<String, Object> placeHold(Long userId, Long bookId, int priority) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            Book book = bookService.getBookById(bookId);
+            if (book.getStock() > 0) {
+                throw new RuntimeException("书籍有库存，可直接借阅");
+            }
+            if (bookHoldRepository.existsByUserIdAndBookIdAndStatusIn(userId, bookId, ACTIVE_STATUSES)) {
+                throw new RuntimeException("已预约该书籍");
+            }
+            if (bookHoldRepository.countByUserIdAndStatusIn(userId, ACTIVE_STATUSES) >= maxActivePerUser) {
+                throw new RuntimeException("有效预约数已达上限（" + maxActivePerUser + "）");
+            }
+
+            BookHold hold = new BookHold();
+            hold.setUserId(userId);
+            hold.setBookId(bookId);
+            hold.setPriority(priority);
+            hold.setStatus(BookHold.WAITING);
+            hold.setCreatedAt(LocalDateTime.now());
+            BookHold saved = bookHoldRepository.save(hold);
+            addToMirror(saved);
+            saved.setPosition(positionOf(saved.getId()));
+
+            log.info("预约成功：holdId={}，userId={}，bookId={}，排队位置={}", saved.getId(), userId, bookId, saved.getPosition());
+            result.put("success", true);
+            result.put("message", "预约成功");
+            result.put("hold", saved);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 取消预约（已分配副本的预约取消后，副本顺延给下一位）
+     */
+    public Map<String, Object> cancelHold(Long holdId) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                BookHold hold = bookHoldRepository.findByIdForUpdate(holdId)
+                        .orElseThrow(() -> new RuntimeException("预约不存在"));
+                if (!ACTIVE_STATUSES.contains(hold.getStatus())) {
+                    throw new RuntimeException("预约已结束");
+                }
+                bookHoldRepository.close(List.of(holdId), BookHold.CANCELLED, ACTIVE_STATUSES, LocalDateTime.now());
+                afterCommit(() -> removeFromMirror(holdId));
+                if (BookHold.READY.equals(hold.getStatus())) {
+                    releaseCopy(hold.getBookId());
+                }
+            });
+            result.put("success", true);
+            result.put("message", "预约已取消");
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 调整排队优先级（管理员）
+     */
+    @Transactional
+    public void updatePriority(Long holdId, int priority) {
+        if (bookHoldRepository.updatePriority(holdId, priority) == 0) {
+            throw new RuntimeException("预约不存在或不在排队中");
+        }
+        afterCommit(() -> bookHoldRepository.findById(holdId).ifPresent(hold -> {
+            removeFromMirror(holdId);
+            addToMirror(hold);
+        }));
+    }
+
+    /**
+     * 一个副本回到馆内（归还/预约过期/预约取消）：优先分配给下一位排队的预约人，无人排队才增加库存
+     * 须在调用方事务内执行
+     */
+    @Transactional
+    public void releaseCopy(Long bookId) {
+        if (!allocateToNextHold(bookId)) {
+            bookService.increaseStock(bookId);
+        }
+    }
+
+    /**
+     * 批量归还时按书籍分配副本，返回未分配给预约、需要回到库存的数量
+     * 须在调用方事务内执行
+     */
+    @Transactional
+    public Map<Long, Integer> allocateCopies(Map<Long, Integer> copiesByBook) {
+        Map<Long, Integer> remaining = new LinkedHashMap<>();
+        copiesByBook.forEach((bookId, copies) -> {
+            int left = copies;
+            while (left > 0 && allocateToNextHold(bookId)) {
+                left--;
+            }
+            if (left > 0) {
+                remaining.put(bookId, left);
+            }
+        });
+        return remaining;
+    }
+
+    /**
+     * 领取用户在这些书上已分配副本的预约（借阅时调用，须在调用方事务内执行）
+     * 返回已领取的书籍ID（这些书不再扣减库存）
+     */
+    @Transactional
+    public Set<Long> claimReadyHolds(Long userId, Collection<Long> bookIds) {
+        List<BookHold> ready = bookHoldRepository.findReadyForUpdate(userId, bookIds);
+        if (ready.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> claimedBooks = new HashSet<>();
+        List<Long> holdIds = ready.stream().map(BookHold::getId).toList();
+        bookHoldRepository.close(holdIds, BookHold.FULFILLED, List.of(BookHold.READY), LocalDateTime.now());
+        ready.forEach(hold -> claimedBooks.add(hold.getBookId()));
+        log.info("领取预约：userId={}，bookIds={}", userId, claimedBooks);
+        return claimedBooks;
+    }
+
+    // 锁定下一个排队预约并标记为待取书；无人排队返回false
+    private boolean allocateToNextHold(Long bookId) {
+        while (true) {
+            BookHold next = bookHoldRepository.findNextWaitingForUpdate(bookId).orElse(null);
+            if (next == null) {
+                return false;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (bookHoldRepository.markReady(next.getId(), now, now.plusDays(pickupDays)) == 1) {
+                log.info("副本已分配给预约：holdId={}，userId={}，bookId={}", next.getId(), next.getUserId(), bookId);
+                afterCommit(() -> removeFromMirror(next.getId()));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 每分钟处理超过取书期限的预约，并为有库存的排队预约分配副本（集群内只在一个节点执行）
+     */
+    @Scheduled(cron = "15 * * * * *")
+    public void processExpiredHolds() {
+        clusterScheduler.runExclusive("hold-expiry", 120, () -> {
+            int expired = 0;
+            while (true) {
+                Integer count = transactionTemplate.execute(status -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    List<BookHold> holds = bookHoldRepository.findExpiredForUpdate(now, EXPIRY_BATCH_SIZE);
+                    if (holds.isEmpty()) {
+                        return 0;
+                    }
+                    bookHoldRepository.close(holds.stream().map(BookHold::getId).toList(),
+                            BookHold.EXPIRED, List.of(BookHold.READY), now);
+                    holds.forEach(hold -> releaseCopy(hold.getBookId()));
+                    return holds.size();
+                });
+                if (count == null || count == 0) {
+                    break;
+                }
+                expired += count;
+            }
+
+            // 管理员补库存等情况：库存>0但仍有人排队，逐本扣库存分配给排队预约
+            int allocated = 0;
+            for (Long bookId : bookHoldRepository.findBooksWithWaitingHoldsAndStock()) {
+                try {
+                    while (Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                        if (!allocateToNextHold(bookId)) {
+                            return false;
+                        }
+                        // 库存不足时抛异常，连同上面的分配一起回滚
+                        bookService.decreaseStock(bookId);
+                        return true;
+                    }))) {
+                        allocated++;
+                    }
+                } catch (RuntimeException e) {
+                    log.debug("库存已分配完：bookId={}，原因={}", bookId, e.getMessage());
+                }
+            }
+            if (expired > 0 || allocated > 0) {
+                log.info("预约处理完成：过期{}个，库存分配{}个", expired, allocated);
+            }
+        });
+    }
+
+    /**
+     * 启动时及每5分钟从数据库重载内存队列（同步其他节点的变更）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void reloadMirror() {
+        Map<Long, NavigableSet<QueueEntry>> byBook = new HashMap<>();
+        Map<Long, QueueEntry> byId = new HashMap<>();
+        for (BookHold hold : bookHoldRepository.findByStatus(BookHold.WAITING)) {
+            QueueEntry entry = new QueueEntry(hold.getId(), hold.getBookId(), hold.getPriority());
+            byBook.computeIfAbsent(hold.getBookId(), k -> new TreeSet<>(QUEUE_ORDER)).add(entry);
+            byId.put(hold.getId(), entry);
+        }
+        synchronized (mirrorLock) {
+            waitingByBook = byBook;
+            waitingById = byId;
+        }
+        log.debug("预约队列已重载：排队预约{}个，书籍{}本", byId.size(), byBook.size());
+    }
+
+    /**
+     * 用户的预约列表（排队中的预约附带当前排队位置）
+     */
+    public List<BookHold> getHoldsByUserId(Long userId) {
+        List<BookHold> holds = bookHoldRepository.findByUserIdOrderByIdDesc(userId);
+        for (BookHold hold : holds) {
+            if (BookHold.WAITING.equals(hold.getStatus())) {
+                hold.setPosition(positionOf(hold.getId()));
+            }
+        }
+        return holds;
+    }
+
+    /**
+     * 书籍当前排队人数（内存队列，不访问数据库）
+     */
+    public int getQueueLength(Long bookId) {
+        synchronized (mirrorLock) {
+            NavigableSet<QueueEntry> queue = waitingByBook.get(bookId);
+            return queue == null ? 0 : queue.size();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (mirrorLock) {
+            stats.put("waitingHolds", waitingById.size());
+            stats.put("booksWithQueue", waitingByBook.size());
+        }
+        stats.put("pickupDays", pickupDays);
+        stats.put("maxActivePerUser", maxActivePerUser);
+        return stats;
+    }
+
+    // 排队位置（从1开始），不在队列中返回null
+    private Integer positionOf(Long holdId) {
+        synchronized (mirrorLock) {
+            QueueEntry entry = waitingById.get(holdId);
+            if (entry == null) {
+                return null;
+            }
+            return waitingByBook.get(entry.bookId()).headSet(entry, false).size() + 1;
+        }
+    }
+
+    private void addToMirror(BookHold hold) {
+        if (!BookHold.WAITING.equals(hold.getStatus())) {
+            return;
+        }
+        QueueEntry entry = new QueueEntry(hold.getId(), hold.getBookId(), hold.getPriority());
+        synchronized (mirrorLock) {
+            waitingByBook.computeIfAbsent(hold.getBookId(), k -> new TreeSet<>(QUEUE_ORDER)).add(entry);
+            waitingById.put(hold.getId(), entry);
+        }
+    }
+
+    private void removeFromMirror(Long holdId) {
+        synchronized (mirrorLock) {
+            QueueEntry entry = waitingById.remove(holdId);
+            if (entry == null) {
+                return;
+            }
+            NavigableSet<QueueEntry> queue = waitingByBook.get(entry.bookId());
+            if (queue != null) {
+                queue.remove(entry);
+                if (queue.isEmpty()) {
+                    waitingByBook.remove(entry.bookId());
+                }
+            }
+        }
+    }
+
+    // 事务提交后执行（无事务时立即执行）
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.config.IdAllocator;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.security.TooManyRequestsException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 书籍批量导入（出版社书目，CSV / NDJSON）
+ * - 上传文件先落到临时文件，请求立即返回任务ID；导入在专用单线程池中执行，不占用请求线程
+ * - 导入前一次流式读取全部（书名, 作者）到内存集合去重，不再逐行查询
+ * - 逐行解析、校验，每满一批按号段预分配主键、JDBC批量INSERT（配合rewriteBatchedStatements合并为多值INSERT）并单独提交
+ * - 任务进度和逐行错误（有上限）保存在本节点内存中，按任务ID查询
+ */
+@Service
+public class BookImportService {
+    private static final Logger log = LoggerFactory.getLogger(BookImportService.class);
+
+    // 字段长度上限（与表结构VARCHAR(255)一致）
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final int MAX_JOBS = 100;
+    private static final long JOB_TTL_MILLIS = 24 * 3600 * 1000L;
+    private static final String INSERT_SQL = "INSERT INTO book (id, name, author, category, stock, description, " +
+            "borrow_count, publish, avg_score, comment_count) VALUES (?, ?, ?, ?, ?, ?, 0, ?, 0, 0)";
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private record ImportRow(long line, String name, String author, String category, int stock,
+                             String description, String publish) {
+    }
+
+    // 导入任务（进度字段由导入线程写、查询线程读）
+    private static final class ImportJob {
+        final String id;
+        final String fileName;
+        final Format format;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        volatile Status status = Status.QUEUED;
+        volatile LocalDateTime startedAt;
+        volatile LocalDateTime finishedAt;
+        volatile String message;
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong inserted = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        // 逐行错误（超过上限只计数）
+        final List<Map<String, Object>> errors = new ArrayList<>();
+
+        ImportJob(String id, String fileName, Format format) {
+            this.id = id;
+            this.fileName = fileName;
+            this.format = format;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdAllocator idAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final BookService bookService;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor executor;
+    private final BoundedCache<String, ImportJob> jobs = new BoundedCache<>("bookImportJobs", MAX_JOBS, JOB_TTL_MILLIS);
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public BookImportService(JdbcTemplate jdbcTemplate, IdAllocator idAllocator, TransactionTemplate transactionTemplate,
+                             BookService bookService, ObjectMapper objectMapper,
+                             @Value("${book.import.chunk-size:1000}") int chunkSize,
+                             @Value("${book.import.max-errors:1000}") int maxErrors,
+                             @Value("${book.import.queue-capacity:4}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = idAllocator;
+        this.transactionTemplate = transactionTemplate;
+        this.bookService = bookService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxErrors = Math.max(0, maxErrors);
+        // 单线程串行导入：去重集合与数据库一致，且不与在线请求争抢连接
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "book-import-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交导入任务：保存上传文件到临时目录后排队执行，返回任务信息
+     *
+     * @param format 为空时按文件扩展名判断（.csv / .ndjson / .jsonl）
+     */
+    public Map<String, Object> submit(MultipartFile file, String format) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("导入文件不能为空");
+        }
+        Format fmt = resolveFormat(format, file.getOriginalFilename());
+
+        Path tempFile;
+        try {
+            // 请求结束后上传的临时文件会被清理，先转存
+            tempFile = Files.createTempFile("book-import-", "." + fmt.name().toLowerCase(Locale.ROOT));
+            file.transferTo(tempFile);
+        } catch (IOException e) {
+            throw new RuntimeException("保存导入文件失败：" + e.getMessage());
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), fmt);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            jobs.invalidate(job.id);
+            deleteQuietly(tempFile);
+            throw new TooManyRequestsException("导入任务排队已满，请稍后再试", 60);
+        }
+        log.info("书籍导入任务已提交：jobId={}，文件={}，格式={}，大小={}字节",
+                job.id, job.fileName, fmt, file.getSize());
+        return toMap(job);
+    }
+
+    /**
+     * 查询导入任务进度
+     */
+    public Map<String, Object> getJob(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new RuntimeException("导入任务不存在或已过期");
+        }
+        return toMap(job);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ImportJob job, Path file) {
+        long start = System.currentTimeMillis();
+        job.status = Status.RUNNING;
+        job.startedAt = LocalDateTime.now();
+        try {
+            Set<String> existing = loadExistingKeys();
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                skipBom(reader);
+                List<ImportRow> chunk = new ArrayList<>(chunkSize);
+                if (job.format == Format.CSV) {
+                    readCsv(job, reader, existing, chunk);
+                } else {
+                    readNdjson(job, reader, existing, chunk);
+                }
+                flushChunk(job, chunk, existing);
+            }
+            job.status = Status.COMPLETED;
+            job.message = "导入完成";
+        } catch (Exception e) {
+            job.status = Status.FAILED;
+            job.message = "导入中止：" + e.getMessage();
+            log.error("书籍导入失败：jobId={}", job.id, e);
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            deleteQuietly(file);
+        }
+        log.info("书籍导入结束：jobId={}，状态={}，读取={}，新增={}，重复={}，失败={}，耗时={}ms",
+                job.id, job.status, job.rowsRead.get(), job.inserted.get(), job.duplicates.get(),
+                job.failed.get(), System.currentTimeMillis() - start);
+    }
+
+    // 一次流式读取全部（书名, 作者），作为去重集合
+    private Set<String> loadExistingKeys() {
+        Set<String> keys = new HashSet<>();
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement("SELECT name, author FROM book",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        keys.add(dedupKey(rs.getString(1), rs.getString(2)));
+                    }
+                }
+            }
+            return null;
+        });
+        return keys;
+    }
+
+    private void readCsv(ImportJob job, BufferedReader reader, Set<String> existing, List<ImportRow> chunk)
+            throws IOException {
+        long[] line = {1};
+        List<String> header = readCsvRecord(reader, line);
+        if (header == null) {
+            throw new RuntimeException("CSV文件为空");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columns.containsKey("name") || !columns.containsKey("author")) {
+            throw new RuntimeException("CSV表头必须包含name和author列");
+        }
+
+        while (true) {
+            long startLine = line[0];
+            List<String> record;
+            try {
+                record = readCsvRecord(reader, line);
+            } catch (IllegalStateException e) {
+                // 引号未闭合：后续内容无法可靠切分，剩余部分作为一条错误结束
+                job.rowsRead.incrementAndGet();
+                recordError(job, startLine, e.getMessage());
+                break;
+            }
+            if (record == null) {
+                break;
+            }
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            job.rowsRead.incrementAndGet();
+            accept(job, startLine, existing, chunk,
+                    csvField(record, columns, "name"), csvField(record, columns, "author"),
+                    csvField(record, columns, "category"), csvField(record, columns, "stock"),
+                    csvField(record, columns, "description"), csvField(record, columns, "publish"));
+        }
+    }
+
+    private void readNdjson(ImportJob job, BufferedReader reader, Set<String> existing, List<ImportRow> chunk)
+            throws IOException {
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            job.rowsRead.incrementAndGet();
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(text);
+            } catch (IOException e) {
+                recordError(job, line, "JSON格式错误");
+                continue;
+            }
+            if (!node.isObject()) {
+                recordError(job, line, "每行必须是一个JSON对象");
+                continue;
+            }
+            accept(job, line, existing, chunk,
+                    jsonField(node, "name"), jsonField(node, "author"), jsonField(node, "category"),
+                    jsonField(node, "stock"), jsonField(node, "description"), jsonField(node, "publish"));
+        }
+    }
+
+    // 校验并去重，通过的行加入当前批次，满一批即写入
+    private void accept(ImportJob job, long line, Set<String> existing, List<ImportRow> chunk,
+                        String name, String author, String category, String stock,
+                        String description, String publish) {
+        name = trimToNull(name);
+        author = trimToNull(author);
+        if (name == null || author == null) {
+            recordError(job, line, "书名和作者不能为空");
+            return;
+        }
+        category = trimToNull(category);
+        description = trimToNull(description);
+        publish = trimToNull(publish);
+        for (String value : new String[]{name, author, category, description, publish}) {
+            if (value != null && value.length() > MAX_FIELD_LENGTH) {
+                recordError(job, line, "字段长度超过" + MAX_FIELD_LENGTH);
+                return;
+            }
+        }
+        int stockValue = 0;
+        if (trimToNull(stock) != null) {
+            try {
+                stockValue = Integer.parseInt(stock.trim());
+            } catch (NumberFormatException e) {
+                stockValue = -1;
+            }
+            if (stockValue < 0) {
+                recordError(job, line, "库存必须是非负整数：" + stock);
+                return;
+            }
+        }
+        // 与库中已有书籍或本文件前面的行重复（名称+作者）
+        if (!existing.add(dedupKey(name, author))) {
+            job.duplicates.incrementAndGet();
+            return;
+        }
+        chunk.add(new ImportRow(line, name, author, category, stockValue, description, publish));
+        if (chunk.size() >= chunkSize) {
+            flushChunk(job, chunk, existing);
+        }
+    }
+
+    // 一批一个事务；失败时整批记为错误并移出去重集合，继续后续批次
+    private void flushChunk(ImportJob job, List<ImportRow> chunk, Set<String> existing) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<ImportRow> rows = new ArrayList<>(chunk);
+        chunk.clear();
+        try {
+            List<Book> books = transactionTemplate.execute(status -> insertBooks(rows));
+            job.inserted.addAndGet(rows.size());
+            bookService.onBooksImported(books);
+        } catch (RuntimeException e) {
+            log.warn("书籍导入批次写入失败：jobId={}，行{}-{}，原因={}",
+                    job.id, rows.get(0).line(), rows.get(rows.size() - 1).line(), e.getMessage());
+            for (ImportRow row : rows) {
+                existing.remove(dedupKey(row.name(), row.author()));
+                recordError(job, row.line(), "批次写入失败：" + e.getMessage());
+            }
+        }
+    }
+
+    private List<Book> insertBooks(List<ImportRow> rows) {
+        long firstId = idAllocator.nextRange("book", rows.size());
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ImportRow row = rows.get(i);
+                ps.setLong(1, firstId + i);
+                ps.setString(2, row.name());
+                ps.setString(3, row.author());
+                ps.setString(4, row.category());
+                ps.setInt(5, row.stock());
+                ps.setString(6, row.description());
+                ps.setString(7, row.publish());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+
+        List<Book> books = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            Book book = new Book();
+            book.setId(firstId + i);
+            book.setName(row.name());
+            book.setAuthor(row.author());
+            book.setCategory(row.category());
+            book.setStock(row.stock());
+            book.setDescription(row.description());
+            book.setPublish(row.publish());
+            books.add(book);
+        }
+        return books;
+    }
+
+    private void recordError(ImportJob job, long line, String message) {
+        job.failed.incrementAndGet();
+        synchronized (job.errors) {
+            if (job.errors.size() < maxErrors) {
+                Map<String, Object> error = new LinkedHashMap<>();
+                error.put("line", line);
+                error.put("message", message);
+                job.errors.add(error);
+            }
+        }
+    }
+
+    private Map<String, Object> toMap(ImportJob job) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", job.id);
+        result.put("fileName", job.fileName);
+        result.put("format", job.format);
+        result.put("status", job.status);
+        result.put("message", job.message);
+        result.put("createdAt", job.createdAt);
+        result.put("startedAt", job.startedAt);
+        result.put("finishedAt", job.finishedAt);
+        result.put("rowsRead", job.rowsRead.get());
+        result.put("inserted", job.inserted.get());
+        result.put("duplicates", job.duplicates.get());
+        result.put("failed", job.failed.get());
+        synchronized (job.errors) {
+            result.put("errors", new ArrayList<>(job.errors));
+        }
+        result.put("errorsTruncated", job.failed.get() > maxErrors);
+        return result;
+    }
+
+    private static Format resolveFormat(String format, String fileName) {
+        if (format != null && !format.isBlank()) {
+            try {
+                return Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("不支持的导入格式：" + format + "（可选csv、ndjson）");
+            }
+        }
+        String lower = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (lower.endsWith(".ndjson") || lower.endsWith(".jsonl")) {
+            return Format.NDJSON;
+        }
+        throw new IllegalArgumentException("无法识别导入格式，请指定format参数（csv、ndjson）");
+    }
+
+    /**
+     * 读取一条CSV记录（RFC 4180：引号内可含逗号、换行，两个引号表示一个引号），文件结束返回null
+     * line[0]为当前行号，读取跨行记录时递增
+     */
+    private static List<String> readCsvRecord(BufferedReader reader, long[] line) throws IOException {
+        String text = reader.readLine();
+        if (text == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            line[0]++;
+            if (!quoted) {
+                break;
+            }
+            // 引号内换行：继续读下一行
+            text = reader.readLine();
+            if (text == null) {
+                throw new IllegalStateException("引号未闭合");
+            }
+            field.append('\n');
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String csvField(List<String> record, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= record.size() ? null : record.get(index);
+    }
+
+    private static String jsonField(JsonNode node, String name) {
+        JsonNode value = node.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    // 去重键：与数据库默认排序规则一致，忽略大小写和首尾空格
+    private static String dedupKey(String name, String author) {
+        return (name == null ? "" : name.trim().toLowerCase(Locale.ROOT)) + '\u0001'
+                + (author == null ? "" : author.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static void skipBom(Reader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除导入临时文件失败：{}", file);
+        }
+    }
+}
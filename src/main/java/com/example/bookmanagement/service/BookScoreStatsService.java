@@ -0,0 +1,159 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.model.BookComment;
+import com.example.bookmanagement.model.BookScoreStats;
+import com.example.bookmanagement.repository.BookCommentRepository;
+import com.example.bookmanagement.repository.BookScoreStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 书籍评分聚合服务：
+ * - 评价计入/移除时增量更新聚合表（总分、数量、星级分布），再用一条UPDATE刷新书籍的平均分和评价数
+ * - 每条评价是否已计入由评价上的scoreCounted标记记录，增量按标记翻转调整，重复、乱序投递都不会重复计分
+ * - 每晚全量重建一次，修复并发或手工改库导致的偏差；重建同时对齐计入标记，之后到达的事件不会再次计入
+ */
+@Service
+@RequiredArgsConstructor
+public class BookScoreStatsService {
+    private static final Logger log = LoggerFactory.getLogger(BookScoreStatsService.class);
+
+    private final BookScoreStatsRepository bookScoreStatsRepository;
+    private final BookCommentRepository bookCommentRepository;
+    private final BookService bookService;
+    private final ClusterScheduler clusterScheduler;
+    private final TransactionTemplate transactionTemplate;
+    private final LeaderboardService leaderboardService;
+
+    /**
+     * 评价是否计入评分统计：已审核、未删除、评分有效
+     */
+    public static boolean isCounted(BookComment comment) {
+        return comment.isAudit() && !comment.isDeleted()
+                && comment.getScore() != null && comment.getScore() >= 1 && comment.getScore() <= 5;
+    }
+
+    /**
+     * 按评价当前状态同步其计分（评分事件消费者调用，幂等）
+     * 评价行加锁读取：应计入状态与计入标记不一致时才调整聚合并翻转标记，一致则说明已处理过（或已被全量重建计入）
+     */
+    @Transactional
+    public void syncComment(Long commentId) {
+        BookComment comment = bookCommentRepository.findByIdForUpdate(commentId).orElse(null);
+        if (comment == null) {
+            return;
+        }
+        boolean counted = isCounted(comment);
+        if (comment.isScoreCounted() == counted) {
+            return;
+        }
+        bookCommentRepository.updateScoreCounted(commentId, counted);
+        applyDelta(comment.getBookId(), comment.getScore(), counted ? 1 : -1);
+    }
+
+    private void applyDelta(Long bookId, int score, int sign) {
+        if (score < 1 || score > 5) {
+            return;
+        }
+        bookScoreStatsRepository.applyDelta(bookId, score, sign);
+        bookService.refreshBookScores(bookId);
+        // 提交后调整评分排行榜（回滚则不调整）
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    leaderboardService.applyScoreDelta(bookId, score, sign);
+                }
+            });
+        } else {
+            leaderboardService.applyScoreDelta(bookId, score, sign);
+        }
+    }
+
+    /**
+     * 获取书籍评分统计（含1-5星分布）
+     */
+    public Map<String, Object> getStats(Long bookId) {
+        BookScoreStats stats = bookScoreStatsRepository.findById(bookId).orElseGet(() -> {
+            BookScoreStats empty = new BookScoreStats();
+            empty.setBookId(bookId);
+            return empty;
+        });
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        histogram.put("1", stats.getStar1());
+        histogram.put("2", stats.getStar2());
+        histogram.put("3", stats.getStar3());
+        histogram.put("4", stats.getStar4());
+        histogram.put("5", stats.getStar5());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("bookId", bookId);
+        result.put("commentCount", stats.getScoreCount());
+        result.put("avgScore", stats.getScoreCount() == 0 ? 0.0 : (double) stats.getScoreSum() / stats.getScoreCount());
+        result.put("histogram", histogram);
+        return result;
+    }
+
+    /**
+     * 单本书重建（按评价表重新聚合，同时对齐该书评价的计入标记）
+     */
+    @Transactional
+    public void rebuild(Long bookId) {
+        bookCommentRepository.alignScoreCounted(bookId);
+        bookScoreStatsRepository.deleteStats(bookId);
+        bookScoreStatsRepository.rebuildStats(bookId);
+        bookService.refreshBookScores(bookId);
+    }
+
+    /**
+     * 全量重建（一个事务内对齐计入标记、清空、重新聚合、刷新全部书籍评分）
+     * @return 刷新的书籍数量
+     */
+    public int rebuildAll() {
+        long start = System.currentTimeMillis();
+        Integer updated = transactionTemplate.execute(status -> {
+            // 先对齐计入标记（锁定状态有变化的评价，等待进行中的事件处理提交），再按评价表重新聚合
+            int aligned = bookCommentRepository.alignAllScoreCounted();
+            if (aligned > 0) {
+                log.warn("评分聚合重建：{}条评价的计入标记与当前状态不一致（事件未投递或失败），已对齐", aligned);
+            }
+            bookScoreStatsRepository.deleteAllStats();
+            int books = bookScoreStatsRepository.rebuildAllStats();
+            log.info("评分聚合重建：有评价的书籍数={}", books);
+            return bookService.refreshAllBookScores();
+        });
+        log.info("评分聚合全量重建完成，刷新书籍数={}，耗时={}ms", updated, System.currentTimeMillis() - start);
+        return updated == null ? 0 : updated;
+    }
+
+    /**
+     * 升级后首次启动：计入标记尚未初始化（已有计入的评价但没有任何标记）时全量重建一次，
+     * 否则旧评价被驳回/删除时的事件会被当作未计入而跳过
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initScoreCountedFlags() {
+        if (!bookCommentRepository.existsByScoreCountedTrue() && bookCommentRepository.existsByIsAuditTrueAndIsDeletedFalse()) {
+            log.info("评价计入标记未初始化，执行一次评分聚合全量重建");
+            clusterScheduler.runExclusive("book-score-rebuild", 1800, this::rebuildAll);
+        }
+    }
+
+    // 每天凌晨3点全量重建（多实例只在一个节点执行）
+    @Scheduled(cron = "0 0 3 * * *")
+    public void scheduledRebuild() {
+        clusterScheduler.runExclusive("book-score-rebuild", 1800, this::rebuildAll);
+    }
+}
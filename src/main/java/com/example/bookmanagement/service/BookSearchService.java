@@ -0,0 +1,348 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.LongIntHashMap;
+import com.example.bookmanagement.cache.LongObjectHashMap;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 书籍全文检索（内存倒排索引）
+ * - 索引字段：书名、作者、分类、简介，按字段加权
+ * - 分词：N-gram（双字切分，汉字额外保留单字），中文书名无需分词词典
+ * - 启动时从数据库全量构建，本节点增删改书籍时增量更新；定时全量重建，收敛其他节点的修改
+ * - 排序：命中词数 > 相关度得分 > 借阅次数 > 平均评分（后两项取排行榜的实时数据）
+ */
+@Service
+@RequiredArgsConstructor
+public class BookSearchService {
+    private static final Logger log = LoggerFactory.getLogger(BookSearchService.class);
+
+    // 字段权重（按0.5为单位存为整数：书名3、作者2、分类1.5、简介1）
+    private static final int NAME_WEIGHT = 6;
+    private static final int AUTHOR_WEIGHT = 4;
+    private static final int CATEGORY_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 2;
+    // 全量构建时每批加载的书籍数量
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    public static final int MAX_RESULTS = 100;
+
+    private final BookRepository bookRepository;
+    private final LeaderboardService leaderboardService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 倒排表：词 -> (书籍ID -> 字段权重之和)，基本类型数组存储，不装箱
+    private Map<String, LongIntHashMap> postings = new HashMap<>();
+    // 正排信息：书籍ID -> 词列表（删除/更新时用）
+    private LongObjectHashMap<String[]> docs = new LongObjectHashMap<>();
+    // 全量重建期间本节点的增量修改（按顺序记录，切换前重放到新索引），非重建期间为null
+    private List<DocTerms> pendingChanges;
+    // 同一时刻只允许一个全量重建（启动与定时任务可能重叠）
+    private final Object rebuildMutex = new Object();
+
+    // 一本书的分词结果；terms为null表示删除
+    private record DocTerms(long bookId, String[] terms, int[] weights) {
+    }
+
+    private record Hit(long bookId, int matched, int score, long borrowCount, double avgScore) {
+    }
+
+    // 从好到差
+    private static final Comparator<Hit> HIT_ORDER = Comparator.comparingInt(Hit::matched).reversed()
+            .thenComparing(Comparator.comparingInt(Hit::score).reversed())
+            .thenComparing(Comparator.comparingLong(Hit::borrowCount).reversed())
+            .thenComparing(Comparator.comparingDouble(Hit::avgScore).reversed())
+            .thenComparingLong(Hit::bookId);
+
+    /**
+     * 全量构建索引：应用启动后执行一次，之后定时执行（默认每5分钟）
+     * 按ID游标分批读取，锁外构建新索引；构建期间的增量修改记入pendingChanges，切换前重放，不会丢失
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${search.rebuild-interval-millis:300000}",
+            initialDelayString = "${search.rebuild-interval-millis:300000}")
+    public void rebuild() {
+        synchronized (rebuildMutex) {
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                pendingChanges = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Map<String, LongIntHashMap> newPostings = new HashMap<>();
+            LongObjectHashMap<String[]> newDocs = new LongObjectHashMap<>();
+            try {
+                long lastId = 0L;
+                while (true) {
+                    List<Book> batch = bookRepository.findPageOrderById(null, null, null, lastId,
+                            PageRequest.of(0, REBUILD_BATCH_SIZE));
+                    for (Book book : batch) {
+                        apply(newPostings, newDocs, analyze(book));
+                    }
+                    if (batch.size() < REBUILD_BATCH_SIZE) {
+                        break;
+                    }
+                    lastId = batch.get(batch.size() - 1).getId();
+                }
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    pendingChanges = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                replayed = pendingChanges.size();
+                for (DocTerms change : pendingChanges) {
+                    apply(newPostings, newDocs, change);
+                }
+                pendingChanges = null;
+                postings = newPostings;
+                docs = newDocs;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("书籍检索索引构建完成：书籍数={}，词条数={}，重放增量={}，耗时={}ms",
+                    newDocs.size(), newPostings.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * 新增/更新书籍时增量索引（已存在则先移除旧词条）
+     */
+    public void index(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        // 分词在锁外完成
+        applyChange(analyze(book));
+    }
+
+    /**
+     * 删除书籍时移除索引
+     */
+    public void remove(Long bookId) {
+        if (bookId == null) {
+            return;
+        }
+        applyChange(new DocTerms(bookId, null, null));
+    }
+
+    /**
+     * 检索书籍ID（按相关度排序）
+     * 至少命中一半查询词的书籍才会返回；只保留前size名（小顶堆），不对全部命中结果排序
+     */
+    public List<Long> search(String query, int limit) {
+        Set<String> queryTerms = tokenize(query, true);
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        int size = Math.max(1, Math.min(limit, MAX_RESULTS));
+        int minMatched = (queryTerms.size() + 1) / 2;
+
+        long[] ids;
+        int[] matched;
+        int[] scores;
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            // 书籍ID -> 命中词数 / 得分
+            LongIntHashMap matchedAcc = new LongIntHashMap();
+            LongIntHashMap scoreAcc = new LongIntHashMap();
+            for (String term : queryTerms) {
+                LongIntHashMap list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                list.forEach((bookId, weight) -> {
+                    matchedAcc.addTo(bookId, 1);
+                    scoreAcc.addTo(bookId, weight);
+                });
+            }
+            ids = new long[matchedAcc.size()];
+            matched = new int[ids.length];
+            scores = new int[ids.length];
+            int[] n = new int[1];
+            matchedAcc.forEach((bookId, m) -> {
+                if (m >= minMatched) {
+                    ids[n[0]] = bookId;
+                    matched[n[0]] = m;
+                    scores[n[0]] = scoreAcc.get(bookId);
+                    n[0]++;
+                }
+            });
+            count = n[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (count == 0) {
+            return List.of();
+        }
+
+        // 借阅次数、平均评分取实时值（不随索引冻结）
+        long[] borrowCounts = new long[count];
+        double[] avgScores = new double[count];
+        leaderboardService.rankingSignals(ids, count, borrowCounts, avgScores);
+
+        // 小顶堆：堆顶为当前前size名中最差的一条
+        PriorityQueue<Hit> top = new PriorityQueue<>(size + 1, HIT_ORDER.reversed());
+        for (int i = 0; i < count; i++) {
+            Hit hit = new Hit(ids[i], matched[i], scores[i], borrowCounts[i], avgScores[i]);
+            if (top.size() < size) {
+                top.offer(hit);
+            } else if (HIT_ORDER.compare(hit, top.peek()) < 0) {
+                top.poll();
+                top.offer(hit);
+            }
+        }
+        Long[] result = new Long[top.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = top.poll().bookId();
+        }
+        return List.of(result);
+    }
+
+    // 当前索引的书籍数量
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyChange(DocTerms change) {
+        lock.writeLock().lock();
+        try {
+            apply(postings, docs, change);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static DocTerms analyze(Book book) {
+        Map<String, Integer> termWeights = new HashMap<>();
+        collect(termWeights, book.getName(), NAME_WEIGHT);
+        collect(termWeights, book.getAuthor(), AUTHOR_WEIGHT);
+        collect(termWeights, book.getCategory(), CATEGORY_WEIGHT);
+        collect(termWeights, book.getDescription(), DESCRIPTION_WEIGHT);
+
+        String[] terms = new String[termWeights.size()];
+        int[] weights = new int[terms.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : termWeights.entrySet()) {
+            terms[i] = e.getKey();
+            weights[i] = e.getValue();
+            i++;
+        }
+        return new DocTerms(book.getId(), terms, weights);
+    }
+
+    // 先移除旧词条，再写入新词条（terms为null时只删除）
+    private static void apply(Map<String, LongIntHashMap> postings, LongObjectHashMap<String[]> docs, DocTerms change) {
+        String[] old = docs.remove(change.bookId());
+        if (old != null) {
+            for (String term : old) {
+                LongIntHashMap list = postings.get(term);
+                if (list != null) {
+                    list.remove(change.bookId());
+                    if (list.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+        if (change.terms() == null) {
+            return;
+        }
+        for (int i = 0; i < change.terms().length; i++) {
+            postings.computeIfAbsent(change.terms()[i], k -> new LongIntHashMap(1))
+                    .addTo(change.bookId(), change.weights()[i]);
+        }
+        docs.put(change.bookId(), change.terms());
+    }
+
+    // 同一词在多个字段出现时权重累加，同一字段内重复出现只计一次
+    private static void collect(Map<String, Integer> termWeights, String text, int weight) {
+        for (String term : tokenize(text, false)) {
+            termWeights.merge(term, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * N-gram分词：
+     * - 文本先做NFKC归一（全角转半角）并转小写，按非字母数字切成片段
+     * - 片段长度>=2时切双字（bigram）；长度为1时保留单字
+     * - 索引时汉字额外保留单字，便于单字查询；查询时优先使用双字
+     */
+    static Set<String> tokenize(String text, boolean forQuery) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text == null || text.isBlank()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int[] cps = normalized.codePoints().toArray();
+        int start = 0;
+        for (int i = 0; i <= cps.length; i++) {
+            if (i == cps.length || !Character.isLetterOrDigit(cps[i])) {
+                emitSegment(terms, cps, start, i, forQuery);
+                start = i + 1;
+            }
+        }
+        return terms;
+    }
+
+    private static void emitSegment(Collection<String> terms, int[] cps, int from, int to, boolean forQuery) {
+        int len = to - from;
+        if (len <= 0) {
+            return;
+        }
+        if (len == 1) {
+            terms.add(new String(cps, from, 1));
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            if (i + 1 < to) {
+                terms.add(new String(cps, i, 2));
+            }
+            if (!forQuery && isHan(cps[i])) {
+                terms.add(new String(cps, i, 1));
+            }
+        }
+    }
+
+    private static boolean isHan(int codePoint) {
+        return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+    }
+}
@@ -1,27 +1,201 @@
 package com.example.bookmanagement.service;
 
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.dto.BookPageResponse;
 import com.example.bookmanagement.model.Book;
 import com.example.bookmanagement.repository.BookRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 public class BookService {
     private final BookRepository bookRepository;
+    private final BookSearchService bookSearchService;
+    private final BoundedCache<Long, Book> bookCache;
+    private final BorrowCountAccumulator borrowCountAccumulator;
+    private final LeaderboardService leaderboardService;
+
+    // 分页大小限制
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    // 批量查询书籍单次上限
+    public static final int MAX_BATCH_IDS = 100;
 
     // 获取所有书籍
     public List<Book> getAllBooks() {
-        return bookRepository.findAll();
+        List<Book> books = bookRepository.findAll();
+        books.forEach(borrowCountAccumulator::merge);
+        return books;
+    }
+
+    /**
+     * 游标分页查询书籍（keyset分页，深翻页与首页代价相同）
+     * sort：id（默认，升序）/ borrowCount（降序）/ avgScore（降序）
+     * cursor：上一页返回的nextCursor，首页传空
+     */
+    public BookPageResponse getBookPage(String category, String author, String publish,
+                                        String sort, Integer size, String cursor) {
+        String sortKey = StringUtils.hasText(sort) ? sort : "id";
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        category = StringUtils.hasText(category) ? category : null;
+        author = StringUtils.hasText(author) ? author : null;
+        publish = StringUtils.hasText(publish) ? publish : null;
+
+        // 多取一条用于判断是否还有下一页
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        String[] parts = decodeCursor(cursor, sortKey);
+        List<Book> books;
+        switch (sortKey) {
+            case "id" -> books = bookRepository.findPageOrderById(category, author, publish,
+                    parts == null ? 0L : Long.parseLong(parts[2]), limit);
+            case "borrowCount" -> books = bookRepository.findPageOrderByBorrowCount(category, author, publish,
+                    parts == null ? Integer.MAX_VALUE : Integer.parseInt(parts[1]),
+                    parts == null ? Long.MAX_VALUE : Long.parseLong(parts[2]), limit);
+            case "avgScore" -> books = bookRepository.findPageOrderByAvgScore(category, author, publish,
+                    parts == null ? Double.MAX_VALUE : Double.parseDouble(parts[1]),
+                    parts == null ? Long.MAX_VALUE : Long.parseLong(parts[2]), limit);
+            default -> throw new RuntimeException("不支持的排序字段：" + sortKey);
+        }
+
+        BookPageResponse response = new BookPageResponse();
+        boolean hasMore = books.size() > pageSize;
+        List<Book> content = hasMore ? books.subList(0, pageSize) : books;
+        response.setContent(content);
+        response.setSize(content.size());
+        response.setHasMore(hasMore);
+        if (hasMore) {
+            response.setNextCursor(encodeCursor(sortKey, content.get(content.size() - 1)));
+        }
+        // 游标使用库中的值，之后再叠加未写回的借阅次数
+        content.forEach(borrowCountAccumulator::merge);
+        return response;
+    }
+
+    // 游标格式：排序字段|排序值|id，Base64(URL安全)编码
+    private String encodeCursor(String sortKey, Book last) {
+        String value = switch (sortKey) {
+            case "borrowCount" -> String.valueOf(last.getBorrowCount());
+            case "avgScore" -> String.valueOf(last.getAvgScore() == null ? 0.0 : last.getAvgScore());
+            default -> "";
+        };
+        String raw = sortKey + "|" + value + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
     }
 
-    // 按ID获取书籍
+    private String[] decodeCursor(String cursor, String sortKey) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(sortKey)) {
+                throw new IllegalArgumentException();
+            }
+            Long.parseLong(parts[2]);
+            if ("borrowCount".equals(sortKey)) {
+                Integer.parseInt(parts[1]);
+            } else if ("avgScore".equals(sortKey)) {
+                Double.parseDouble(parts[1]);
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+
+    // 按ID获取书籍（先查本地缓存，返回副本避免调用方修改缓存内容；叠加未写回的借阅次数）
+    // 回填按读库前取得的代次：读库期间被evictAfterCommit失效过则不回填，避免旧行覆盖失效
     public Book getBookById(Long id) {
-        return bookRepository.findById(id)
+        Book cached = bookCache.get(id);
+        if (cached != null) {
+            return borrowCountAccumulator.merge(copyOf(cached));
+        }
+        long generation = bookCache.generation(id);
+        Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("书籍不存在"));
+        bookCache.putIfGeneration(id, copyOf(book), generation);
+        return borrowCountAccumulator.merge(copyOf(book));
+    }
+
+    /**
+     * 按ID批量获取书籍：先查本地缓存，未命中的一条IN查询加载并回填缓存
+     * 按请求顺序返回，重复ID只返回一次，不存在的ID跳过
+     */
+    public List<Book> getBooksByIds(List<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        if (distinct.size() > MAX_BATCH_IDS) {
+            throw new RuntimeException("单次最多查询" + MAX_BATCH_IDS + "本书籍");
+        }
+        Map<Long, Book> byId = new HashMap<>();
+        Map<Long, Long> misses = new LinkedHashMap<>();
+        for (Long id : distinct) {
+            Book cached = bookCache.get(id);
+            if (cached != null) {
+                byId.put(id, copyOf(cached));
+            } else {
+                misses.put(id, bookCache.generation(id));
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (Book book : bookRepository.findAllById(misses.keySet())) {
+                bookCache.putIfGeneration(book.getId(), copyOf(book), misses.get(book.getId()));
+                byId.put(book.getId(), copyOf(book));
+            }
+        }
+        List<Book> result = new ArrayList<>(byId.size());
+        for (Long id : distinct) {
+            Book book = byId.get(id);
+            if (book != null) {
+                result.add(borrowCountAccumulator.merge(book));
+            }
+        }
+        return result;
+    }
+
+    // 书籍缓存统计（含借阅次数写回缓冲）
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(bookCache.stats());
+        stats.put("borrowCountBuffer", borrowCountAccumulator.stats());
+        return stats;
+    }
+
+    // 借阅次数手动对账，返回补齐的书籍数
+    public int reconcileBorrowCounts() {
+        return borrowCountAccumulator.reconcile();
+    }
+
+    // 写入后刷新缓存
+    private void cacheBook(Book book) {
+        if (book != null && book.getId() != null) {
+            bookCache.put(book.getId(), copyOf(book));
+        }
+    }
+
+    private static Book copyOf(Book source) {
+        Book copy = new Book();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
     }
 
     // 添加书籍
@@ -30,55 +204,181 @@ public class BookService {
         if (bookRepository.findByNameAndAuthor(book.getName(), book.getAuthor()).isPresent()) {
             throw new RuntimeException("该书籍已存在（名称+作者重复）");
         }
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        cacheBook(saved);
+        bookSearchService.index(saved);
+        leaderboardService.onBookSaved(saved);
+        return saved;
     }
 
-    // 更新书籍
+    // 更新书籍（借阅次数以库中为准，不接受客户端回传值，避免覆盖未写回的增量）
     public Book updateBook(Book book) {
-        if (!bookRepository.existsById(book.getId())) {
-            throw new RuntimeException("书籍不存在");
-        }
-        return bookRepository.save(book);
+        Book current = bookRepository.findById(book.getId())
+                .orElseThrow(() -> new RuntimeException("书籍不存在"));
+        book.setBorrowCount(current.getBorrowCount());
+        Book saved = bookRepository.save(book);
+        cacheBook(saved);
+        bookSearchService.index(saved);
+        leaderboardService.onBookSaved(saved);
+        return saved;
     }
 
     // 删除书籍
     public void deleteBook(Long id) {
         bookRepository.deleteById(id);
+        bookCache.invalidate(id);
+        bookSearchService.remove(id);
+        leaderboardService.onBookDeleted(id);
+    }
+
+    /**
+     * 批量导入的书籍已提交：加入检索索引和排行榜（导入走JDBC批量写入，不经过addBook）
+     */
+    public void onBooksImported(List<Book> books) {
+        for (Book book : books) {
+            bookSearchService.index(book);
+            leaderboardService.onBookSaved(book);
+        }
     }
 
-    // 增加借阅次数
+    /**
+     * 全文检索书籍（内存索引取ID，再按主键批量加载，保持相关度顺序）
+     */
+    public List<Book> searchBooks(String keyword, int limit) {
+        List<Long> ids = bookSearchService.search(keyword, limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Book> byId = new HashMap<>();
+        for (Book book : bookRepository.findAllById(ids)) {
+            byId.put(book.getId(), book);
+        }
+        List<Book> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Book book = byId.get(id);
+            if (book != null) {
+                result.add(borrowCountAccumulator.merge(book));
+            }
+        }
+        return result;
+    }
+
+    // 增加借阅次数（内存累加，事务提交后生效，定时批量写回）
     public void increaseBorrowCount(Long bookId) {
-        Book book = getBookById(bookId);
-        book.setBorrowCount(book.getBorrowCount() + 1);
-        bookRepository.save(book);
+        borrowCountAccumulator.increment(bookId);
     }
 
-    // 减少库存
+    // 减少库存（条件更新：库存>0才扣减）
+    @Transactional
     public void decreaseStock(Long bookId) {
-        Book book = getBookById(bookId);
-        if (book.getStock() <= 0) {
-            throw new RuntimeException("书籍库存不足");
+        if (bookRepository.decreaseStockIfAvailable(bookId) == 0) {
+            throw stockFailure(bookId);
         }
-        book.setStock(book.getStock() - 1);
-        bookRepository.save(book);
+        evictAfterCommit(bookId);
     }
 
-    // 增加库存
+    // 增加库存（原子自增）
+    @Transactional
     public void increaseStock(Long bookId) {
-        Book book = getBookById(bookId);
-        book.setStock(book.getStock() + 1);
-        bookRepository.save(book);
+        if (bookRepository.increaseStock(bookId) == 0) {
+            throw new RuntimeException("书籍不存在");
+        }
+        evictAfterCommit(bookId);
     }
 
-    // ========== 关键修复：确保该方法是public且参数匹配 ==========
     /**
-     * 更新书籍的评分统计（平均评分+评价数量）
+     * 借出一本：条件UPDATE扣减库存，借阅次数+1走内存累加
+     * 须在调用方事务内执行，与借阅记录写入保持一致
      */
     @Transactional
-    public void updateBookScores(Long bookId, Double avgScore, Long commentCount) {
-        // 先校验书籍存在性
-        getBookById(bookId);
-        // 调用Repository的更新方法
-        bookRepository.updateBookScores(bookId, avgScore, commentCount);
+    public void borrowCopy(Long bookId) {
+        if (bookRepository.decreaseStockIfAvailable(bookId) == 0) {
+            throw stockFailure(bookId);
+        }
+        borrowCountAccumulator.increment(bookId);
+        evictAfterCommit(bookId);
+    }
+
+    /**
+     * 批量借出（须在调用方事务内）：锁定书籍行，有库存的书一条UPDATE统一扣减，借阅次数走内存累加
+     * 返回借出失败的书籍ID -> 原因（全部成功时为空）
+     */
+    @Transactional
+    public Map<Long, String> borrowCopies(Collection<Long> bookIds) {
+        Map<Long, Integer> stocks = new HashMap<>();
+        for (Object[] row : bookRepository.lockStocks(bookIds)) {
+            stocks.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        }
+        Map<Long, String> failures = new LinkedHashMap<>();
+        List<Long> available = new ArrayList<>(bookIds.size());
+        for (Long bookId : bookIds) {
+            Integer stock = stocks.get(bookId);
+            if (stock == null) {
+                failures.put(bookId, "书籍不存在");
+            } else if (stock <= 0) {
+                failures.put(bookId, "书籍库存不足");
+            } else {
+                available.add(bookId);
+            }
+        }
+        if (!available.isEmpty()) {
+            // 行已加锁，库存判断在事务内不会失效
+            bookRepository.decreaseStocks(available);
+            available.forEach(borrowCountAccumulator::increment);
+            available.forEach(this::evictAfterCommit);
+        }
+        return failures;
+    }
+
+    /**
+     * 批量归还加库存：按归还数量分组，每组一条UPDATE（通常只有“每本+1”一组）
+     */
+    @Transactional
+    public void increaseStocks(Map<Long, Integer> copiesByBook) {
+        Map<Integer, List<Long>> booksByAmount = new HashMap<>();
+        copiesByBook.forEach((bookId, copies) ->
+                booksByAmount.computeIfAbsent(copies, k -> new ArrayList<>()).add(bookId));
+        booksByAmount.forEach((amount, ids) -> bookRepository.increaseStocks(ids, amount));
+        copiesByBook.keySet().forEach(this::evictAfterCommit);
+    }
+
+    /**
+     * 按评分聚合表刷新书籍评分（一条UPDATE，不扫描评价表）
+     */
+    @Transactional
+    public void refreshBookScores(Long bookId) {
+        bookRepository.refreshBookScores(bookId);
+        evictAfterCommit(bookId);
+    }
+
+    /**
+     * 按评分聚合表刷新全部书籍评分（全量重建用）
+     */
+    @Transactional
+    public int refreshAllBookScores() {
+        int updated = bookRepository.refreshAllBookScores();
+        bookCache.invalidateAll();
+        return updated;
+    }
+
+    // 条件更新未命中时区分“书籍不存在”和“库存不足”（仅失败路径多一次查询）
+    private RuntimeException stockFailure(Long bookId) {
+        if (!bookRepository.existsById(bookId)) {
+            return new RuntimeException("书籍不存在");
+        }
+        return new RuntimeException("书籍库存不足");
+    }
+
+    // 立即失效缓存，并在事务提交后再失效一次，防止提交前被并发读回填旧值
+    private void evictAfterCommit(Long bookId) {
+        bookCache.invalidate(bookId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bookCache.invalidate(bookId);
+                }
+            });
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.repository.BookRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 书籍借阅次数写回缓冲（write-behind）
+ * - 借阅事务提交后在内存中累加（每本书一个LongAdder，热门书并发累加无锁竞争）
+ * - 定时把增量批量写回：按增量分组，每组一条 UPDATE book SET borrow_count = borrow_count + ? WHERE id IN (...)
+ *   写回代价只与新增借阅有关，与书籍的历史借阅量无关
+ * - 写回失败时增量加回内存，下次重试；应用关闭时最后写回一次
+ * - 读取书籍时叠加本节点未写回的增量
+ * - 同时通知排行榜增量调整名次
+ * 宕机时未写回的增量（至多一个写回周期）会丢失，可由管理员手动对账（reconcile）按借阅记录数补齐
+ */
+@Service
+@RequiredArgsConstructor
+public class BorrowCountAccumulator {
+    private static final Logger log = LoggerFactory.getLogger(BorrowCountAccumulator.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BookRepository bookRepository;
+    private final BoundedCache<Long, Book> bookCache;
+    private final ClusterScheduler clusterScheduler;
+    private final LeaderboardService leaderboardService;
+
+    // 书籍ID -> 未写回的增量（条目不删除，数量以书籍总数为上限）
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    private final LongAdder flushedDeltas = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /**
+     * 借阅次数+1（有事务时在提交后累加，回滚的借阅不计数）
+     */
+    public void increment(Long bookId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(bookId, 1);
+                    leaderboardService.recordBorrow(bookId);
+                }
+            });
+        } else {
+            add(bookId, 1);
+            leaderboardService.recordBorrow(bookId);
+        }
+    }
+
+    private void add(Long bookId, long delta) {
+        pending.computeIfAbsent(bookId, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * 本节点尚未写回的增量
+     */
+    public long pendingDelta(Long bookId) {
+        LongAdder adder = pending.get(bookId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 读取时叠加未写回的增量（传入的应为副本，不可是受管实体）
+     */
+    public Book merge(Book book) {
+        if (book != null && book.getId() != null) {
+            long delta = pendingDelta(book.getId());
+            if (delta != 0) {
+                book.setBorrowCount((int) (book.getBorrowCount() + delta));
+            }
+        }
+        return book;
+    }
+
+    /**
+     * 定时批量写回（每个节点各自写回自己的增量）
+     */
+    @Scheduled(fixedDelayString = "${counter.borrow.flush-interval-millis:1000}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        // 按ID顺序更新，多节点并发写回时加锁顺序一致，避免死锁
+        pending.keySet().stream().sorted().forEach(bookId -> {
+            long delta = pending.get(bookId).sumThenReset();
+            if (delta != 0) {
+                deltas.put(bookId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // 按增量分组，每组一条UPDATE（大部分书籍一个周期内只借出1次，通常只有少数几组）
+        Map<Integer, List<Long>> booksByDelta = new TreeMap<>();
+        deltas.forEach((bookId, delta) ->
+                booksByDelta.computeIfAbsent(Math.toIntExact(delta), k -> new ArrayList<>()).add(bookId));
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    booksByDelta.forEach((delta, ids) -> bookRepository.increaseBorrowCounts(ids, delta)));
+            // 数据库已包含这些增量，失效缓存中的旧值
+            deltas.keySet().forEach(bookCache::invalidate);
+            flushedDeltas.add(deltas.values().stream().mapToLong(Long::longValue).sum());
+            flushCount.increment();
+        } catch (Exception e) {
+            // 整批回滚，增量加回内存等待下次写回
+            deltas.forEach(this::add);
+            flushFailures.increment();
+            log.error("借阅次数写回失败，{}本书的增量将在下次重试：{}", deltas.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 应用关闭时写回剩余增量
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        long remaining = pending.values().stream().mapToLong(LongAdder::sum).sum();
+        if (remaining != 0) {
+            log.warn("关闭时仍有{}次借阅未写回，可由管理员手动对账补齐", remaining);
+        }
+    }
+
+    /**
+     * 手动对账（管理员触发，集群内只在一个节点执行）：借阅次数低于借阅记录数的书籍补齐到借阅记录数
+     * 只调高不调低，历史数据和手工维护的借阅次数不受影响；用于节点宕机丢失增量之后
+     * 注意：其他节点此刻尚未写回的增量会被重复计入，应在低峰期、各节点写回之后执行
+     */
+    public int reconcile() {
+        flush();
+        int[] updated = {0};
+        boolean ran = clusterScheduler.runExclusive("borrow-count-reconcile", 1800, () -> {
+            Integer count = transactionTemplate.execute(status -> bookRepository.reconcileBorrowCounts());
+            updated[0] = count == null ? 0 : count;
+            if (updated[0] > 0) {
+                bookCache.invalidateAll();
+            }
+            log.warn("借阅次数对账：{}本书的借阅次数少于借阅记录数，已补齐", updated[0]);
+        });
+        if (!ran) {
+            throw new RuntimeException("借阅次数对账正在其他节点执行");
+        }
+        return updated[0];
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedBooks", pending.size());
+        stats.put("pendingDeltas", pending.values().stream().mapToLong(LongAdder::sum).sum());
+        stats.put("flushedDeltas", flushedDeltas.sum());
+        stats.put("flushes", flushCount.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        return stats;
+    }
+}
@@ -1,17 +1,36 @@
 package com.example.bookmanagement.service;
 
+import com.example.bookmanagement.config.IdAllocator;
+import com.example.bookmanagement.dto.BorrowHistoryDTO;
+import com.example.bookmanagement.event.OverdueReturnHandler;
 import com.example.bookmanagement.model.BorrowRecord;
-import com.example.bookmanagement.model.Violation;
 import com.example.bookmanagement.repository.BorrowRecordRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -20,8 +39,18 @@ public class BorrowRecordService {
 
     private final BorrowRecordRepository borrowRecordRepository;
     private final BookService bookService;
-    private final ViolationService violationService;
-    private final UserService userService;
+    private final BookHoldService bookHoldService;
+    private final OutboxService outboxService;
+    private final RecommendationService recommendationService;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdAllocator idAllocator;
+
+    // 批量借阅/归还单次上限
+    public static final int MAX_BATCH_SIZE = 50;
+    // 借阅历史分页大小
+    public static final int DEFAULT_HISTORY_SIZE = 30;
+    public static final int MAX_HISTORY_SIZE = 100;
 
     // 按用户ID获取借阅记录
     public List<BorrowRecord> getBorrowsByUserId(Long userId) {
@@ -32,30 +61,77 @@ public class BorrowRecordService {
         return records;
     }
 
+    /**
+     * 用户借阅历史（含书名/作者，一条查询），按借阅日期倒序、同日按记录ID倒序游标分页
+     * （主键由号段分配，ID大小不代表借阅先后）
+     * 多取一条判断是否还有下一页，nextCursor编码本页最后一条的借阅日期和记录ID
+     */
+    public Map<String, Object> getBorrowHistory(Long userId, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_HISTORY_SIZE : Math.max(1, Math.min(size, MAX_HISTORY_SIZE));
+        LocalDate beforeTime = null;
+        Long beforeId = null;
+        if (StringUtils.hasText(cursor)) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\|", -1);
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException();
+                }
+                beforeTime = LocalDate.parse(parts[0]);
+                beforeId = Long.parseLong(parts[1]);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
+        List<BorrowHistoryDTO> rows = borrowRecordRepository.findHistoryByUserId(userId, beforeTime, beforeId,
+                PageRequest.of(0, pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        List<BorrowHistoryDTO> content = hasMore ? rows.subList(0, pageSize) : rows;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("success", true);
+        result.put("data", content);
+        result.put("hasMore", hasMore);
+        result.put("nextCursor", hasMore ? encodeHistoryCursor(content.get(content.size() - 1)) : null);
+        return result;
+    }
+
+    // 借阅历史游标格式：借阅日期|记录ID，Base64(URL安全)编码
+    private static String encodeHistoryCursor(BorrowHistoryDTO last) {
+        String raw = last.getBorrowTime() + "|" + last.getRecordId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
     // 按用户ID获取未归还的借阅记录
     public List<BorrowRecord> getCurrentBorrowsByUserId(Long userId) {
         return borrowRecordRepository.findByUserIdAndIsReturnedFalse(userId);
     }
 
-    // 借阅书籍
+    // 借阅书籍（库存条件扣减 + 借阅记录写入在同一事务中，任一步失败整体回滚）
     public Map<String, Object> borrowBook(Long userId, Long bookId) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            // 检查书籍库存
-            bookService.decreaseStock(bookId);
+            BorrowRecord record = transactionTemplate.execute(status -> {
+                // 已有分配给该用户的预约副本：直接领取，不再扣减库存
+                if (!bookHoldService.claimReadyHolds(userId, List.of(bookId)).isEmpty()) {
+                    bookService.increaseBorrowCount(bookId);
+                } else {
+                    // 库存>0时条件UPDATE扣减库存；借阅次数由BorrowCountAccumulator在内存累加后批量写回
+                    bookService.borrowCopy(bookId);
+                }
 
-            // 创建借阅记录
-            BorrowRecord record = new BorrowRecord();
-            record.setUserId(userId);
-            record.setBookId(bookId);
-            record.setBorrowTime(LocalDate.now());
-            record.setReturned(false); // 改用统一的setter（lombok生成）
-
-            borrowRecordRepository.save(record);
-
-            // 增加书籍借阅次数
-            bookService.increaseBorrowCount(bookId);
+                // 创建借阅记录
+                BorrowRecord newRecord = new BorrowRecord();
+                newRecord.setUserId(userId);
+                newRecord.setBookId(bookId);
+                newRecord.setBorrowTime(LocalDate.now());
+                newRecord.setDueDate(newRecord.getBorrowTime().plusDays(BorrowRecord.BORROW_DAYS));
+                newRecord.setReturned(false); // 改用统一的setter（lombok生成）
+                return borrowRecordRepository.save(newRecord);
+            });
+            // 事务已提交，更新共同借阅推荐
+            recommendationService.recordBorrows(userId, List.of(bookId));
 
             result.put("success", true);
             result.put("message", "借阅成功");
@@ -68,66 +144,299 @@ public class BorrowRecordService {
         return result;
     }
 
-    // 归还书籍
+    // 归还书籍（条件更新归还状态，防止并发重复归还导致库存多加）
+    // 借阅记录加行锁读取：逾期任务正持有该行时等待其提交，读到最新的逾期标记，避免重复记违规
     public Map<String, Object> returnBook(Long recordId) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            BorrowRecord record = borrowRecordRepository.findById(recordId)
-                    .orElseThrow(() -> new RuntimeException("借阅记录不存在"));
+            BorrowRecord record = transactionTemplate.execute(status -> {
+                BorrowRecord current = borrowRecordRepository.findByIdForUpdate(recordId)
+                        .orElseThrow(() -> new RuntimeException("借阅记录不存在"));
 
-            if (record.isReturned()) {
-                throw new RuntimeException("该书籍已归还");
-            }
+                if (current.isReturned()) {
+                    throw new RuntimeException("该书籍已归还");
+                }
 
-            // 计算逾期天数
-            LocalDate borrowDate = record.getBorrowTime();
-            LocalDate returnDate = LocalDate.now();
-            long daysBetween = java.time.temporal.ChronoUnit.DAYS.between(borrowDate, returnDate);
-            int overdueDays = daysBetween > 7 ? (int) (daysBetween - 7) : 0;
+                LocalDate returnDate = LocalDate.now();
+                // 更新借阅记录（仅未归还时成功）
+                if (borrowRecordRepository.markReturned(recordId, returnDate) == 0) {
+                    throw new RuntimeException("该书籍已归还");
+                }
+                current.setReturned(true); // 改用统一的setter
+                current.setReturnTime(returnDate);
 
-            // 更新借阅记录
-            record.setReturned(true); // 改用统一的setter
-            record.setReturnTime(returnDate);
-            borrowRecordRepository.save(record);
+                // 副本优先分配给排队的预约人，无人排队才增加书籍库存
+                bookHoldService.releaseCopy(current.getBookId());
+
+                // 计算逾期天数
+                int overdueDays = overdueDays(current, returnDate);
+
+                // 如果逾期，记录违规（逾期任务已记过违规的记录不再重复记录）
+                if (recordOverdueViolation(current, returnDate, overdueDays)) {
+                    result.put("violation", true);
+                }
+                if (overdueDays > 0) {
+                    result.put("overdue", true);
+                    result.put("overdueDays", overdueDays);
+                }
+                return current;
+            });
 
             // 日志：确认归还后的记录信息
             log.info("归还记录ID:{}，bookId:{}，已归还:{}",
                     record.getId(), record.getBookId(), record.isReturned());
 
-            // 增加书籍库存
-            bookService.increaseStock(record.getBookId());
+            int overdueDays = (int) result.getOrDefault("overdueDays", 0);
+            result.put("success", true);
+            result.put("message", overdueDays > 0 ? "归还成功（逾期" + overdueDays + "天）" : "归还成功");
+            result.put("record", record); // 返回完整的记录（包含bookId）
+        } catch (Exception e) {
+            result.remove("overdue");
+            result.remove("overdueDays");
+            result.remove("violation");
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
 
-            // 如果逾期，记录违规
-            if (overdueDays > 0) {
-                Violation violation = new Violation();
-                violation.setUserId(record.getUserId());
-                violation.setBookId(record.getBookId());
-                violation.setViolationDate(returnDate);
-                violation.setReason("逾期归还");
-                violation.setOverdueDays(overdueDays);
+        return result;
+    }
 
-                violationService.addViolation(violation);
+    /**
+     * 批量借阅（柜台一次借多本）：一个事务内锁定书籍行、一条UPDATE扣减库存、JDBC批量写入借阅记录
+     * 返回每本书的结果；allOrNothing为true时任一本失败则整批回滚
+     */
+    public Map<String, Object> borrowBooks(Long userId, List<Long> bookIds, boolean allOrNothing) {
+        Map<String, Object> result = new HashMap<>();
+        if (userId == null || bookIds == null || bookIds.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "用户ID和书籍ID不能为空");
+            return result;
+        }
+        if (bookIds.size() > MAX_BATCH_SIZE) {
+            result.put("success", false);
+            result.put("message", "单次最多借阅" + MAX_BATCH_SIZE + "本");
+            return result;
+        }
 
-                // 增加用户违规次数
-                userService.increaseViolationCount(record.getUserId());
+        // 同一本书在一批中重复出现只借一次，其余视为失败
+        Set<Long> distinct = new LinkedHashSet<>(bookIds);
+        try {
+            Map<Long, String> failures = new HashMap<>();
+            Map<Long, BorrowRecord> records = transactionTemplate.execute(status -> {
+                // 已分配给该用户的预约副本直接领取，其余书籍统一扣减库存
+                Set<Long> claimed = bookHoldService.claimReadyHolds(userId, distinct);
+                claimed.forEach(bookService::increaseBorrowCount);
+                List<Long> toBorrow = new ArrayList<>(distinct);
+                toBorrow.removeAll(claimed);
+                if (!toBorrow.isEmpty()) {
+                    failures.putAll(bookService.borrowCopies(toBorrow));
+                }
+                if (allOrNothing && (!failures.isEmpty() || distinct.size() < bookIds.size())) {
+                    status.setRollbackOnly();
+                    return Map.of();
+                }
+                List<Long> borrowed = new ArrayList<>(distinct);
+                borrowed.removeAll(failures.keySet());
+                return insertBorrowRecords(userId, borrowed);
+            });
+            recommendationService.recordBorrows(userId, records.keySet());
 
-                result.put("overdue", true);
-                result.put("overdueDays", overdueDays);
-                result.put("violation", true);
+            List<Map<String, Object>> items = new ArrayList<>(bookIds.size());
+            Set<Long> seen = new HashSet<>();
+            int succeeded = 0;
+            for (Long bookId : bookIds) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("bookId", bookId);
+                BorrowRecord record = records.get(bookId);
+                if (!seen.add(bookId)) {
+                    item.put("success", false);
+                    item.put("message", "重复的书籍ID");
+                } else if (record != null) {
+                    item.put("success", true);
+                    item.put("message", "借阅成功");
+                    item.put("record", record);
+                    succeeded++;
+                } else {
+                    item.put("success", false);
+                    item.put("message", failures.getOrDefault(bookId, "整批已回滚"));
+                }
+                items.add(item);
             }
-
-            result.put("success", true);
-            result.put("message", overdueDays > 0 ? "归还成功（逾期" + overdueDays + "天）" : "归还成功");
-            result.put("record", record); // 返回完整的记录（包含bookId）
+            result.put("success", succeeded > 0);
+            result.put("message", "批量借阅完成：成功" + succeeded + "本，失败" + (bookIds.size() - succeeded) + "本");
+            result.put("items", items);
         } catch (Exception e) {
             result.put("success", false);
             result.put("message", e.getMessage());
         }
+        return result;
+    }
+
+    // JDBC批量写入借阅记录（主键预先按号段分配，配合rewriteBatchedStatements合并为多值INSERT），返回 书籍ID -> 记录
+    private Map<Long, BorrowRecord> insertBorrowRecords(Long userId, List<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return Map.of();
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate dueDate = today.plusDays(BorrowRecord.BORROW_DAYS);
+        long firstId = idAllocator.nextRange("borrow_records", bookIds.size());
+        jdbcTemplate.batchUpdate("INSERT INTO borrow_records (id, user_id, book_id, borrow_time, due_date, " +
+                        "is_returned, overdue_flagged) VALUES (?, ?, ?, ?, ?, 0, 0)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setLong(1, firstId + i);
+                        ps.setLong(2, userId);
+                        ps.setLong(3, bookIds.get(i));
+                        ps.setDate(4, Date.valueOf(today));
+                        ps.setDate(5, Date.valueOf(dueDate));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return bookIds.size();
+                    }
+                });
+
+        Map<Long, BorrowRecord> records = new LinkedHashMap<>();
+        for (int i = 0; i < bookIds.size(); i++) {
+            BorrowRecord record = new BorrowRecord();
+            record.setId(firstId + i);
+            record.setUserId(userId);
+            record.setBookId(bookIds.get(i));
+            record.setBorrowTime(today);
+            record.setDueDate(dueDate);
+            record.setReturned(false);
+            records.put(record.getBookId(), record);
+        }
+        return records;
+    }
+
+    /**
+     * 批量归还：一个事务内锁定借阅记录、一条UPDATE标记归还、按书籍汇总后批量加库存
+     * 返回每条记录的结果（不存在/已归还的记录单独失败，不影响其他记录）
+     */
+    public Map<String, Object> returnBooks(List<Long> recordIds) {
+        Map<String, Object> result = new HashMap<>();
+        if (recordIds == null || recordIds.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "借阅记录ID不能为空");
+            return result;
+        }
+        if (recordIds.size() > MAX_BATCH_SIZE) {
+            result.put("success", false);
+            result.put("message", "单次最多归还" + MAX_BATCH_SIZE + "本");
+            return result;
+        }
 
+        Set<Long> distinct = new LinkedHashSet<>(recordIds);
+        LocalDate returnDate = LocalDate.now();
+        try {
+            Map<Long, Map<String, Object>> itemsById = transactionTemplate.execute(status -> {
+                Map<Long, BorrowRecord> locked = new HashMap<>();
+                for (BorrowRecord record : borrowRecordRepository.findAllByIdForUpdate(distinct)) {
+                    locked.put(record.getId(), record);
+                }
+
+                Map<Long, Map<String, Object>> items = new HashMap<>();
+                List<BorrowRecord> returnable = new ArrayList<>();
+                for (Long recordId : distinct) {
+                    BorrowRecord record = locked.get(recordId);
+                    if (record == null) {
+                        items.put(recordId, failedItem(recordId, "借阅记录不存在"));
+                    } else if (record.isReturned()) {
+                        items.put(recordId, failedItem(recordId, "该书籍已归还"));
+                    } else {
+                        returnable.add(record);
+                    }
+                }
+                if (returnable.isEmpty()) {
+                    return items;
+                }
+
+                List<Long> ids = new ArrayList<>(returnable.size());
+                Map<Long, Integer> copiesByBook = new HashMap<>();
+                for (BorrowRecord record : returnable) {
+                    ids.add(record.getId());
+                    copiesByBook.merge(record.getBookId(), 1, Integer::sum);
+                }
+                borrowRecordRepository.markAllReturned(ids, returnDate);
+                // 副本优先分配给排队的预约人，剩余的回到库存
+                Map<Long, Integer> toStock = bookHoldService.allocateCopies(copiesByBook);
+                if (!toStock.isEmpty()) {
+                    bookService.increaseStocks(toStock);
+                }
+
+                for (BorrowRecord record : returnable) {
+                    record.setReturned(true);
+                    record.setReturnTime(returnDate);
+                    int overdueDays = overdueDays(record, returnDate);
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("recordId", record.getId());
+                    item.put("success", true);
+                    item.put("message", overdueDays > 0 ? "归还成功（逾期" + overdueDays + "天）" : "归还成功");
+                    if (overdueDays > 0) {
+                        item.put("overdue", true);
+                        item.put("overdueDays", overdueDays);
+                    }
+                    if (recordOverdueViolation(record, returnDate, overdueDays)) {
+                        item.put("violation", true);
+                    }
+                    item.put("record", record);
+                    items.put(record.getId(), item);
+                }
+                return items;
+            });
+
+            List<Map<String, Object>> items = new ArrayList<>(recordIds.size());
+            Set<Long> seen = new HashSet<>();
+            int succeeded = 0;
+            for (Long recordId : recordIds) {
+                Map<String, Object> item = seen.add(recordId) ? itemsById.get(recordId) : failedItem(recordId, "重复的借阅记录ID");
+                if (Boolean.TRUE.equals(item.get("success"))) {
+                    succeeded++;
+                }
+                items.add(item);
+            }
+            log.info("批量归还：请求{}条，成功{}条", recordIds.size(), succeeded);
+            result.put("success", succeeded > 0);
+            result.put("message", "批量归还完成：成功" + succeeded + "本，失败" + (recordIds.size() - succeeded) + "本");
+            result.put("items", items);
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+        }
         return result;
     }
 
+    private static Map<String, Object> failedItem(Long recordId, String message) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("recordId", recordId);
+        item.put("success", false);
+        item.put("message", message);
+        return item;
+    }
+
+    // 逾期天数（未逾期为0）
+    private static int overdueDays(BorrowRecord record, LocalDate returnDate) {
+        LocalDate dueDate = record.getDueDate() != null ? record.getDueDate()
+                : record.getBorrowTime().plusDays(BorrowRecord.BORROW_DAYS);
+        long daysBetween = ChronoUnit.DAYS.between(dueDate, returnDate);
+        return daysBetween > 0 ? (int) daysBetween : 0;
+    }
+
+    // 逾期归还记录违规（逾期任务已记过违规的记录不再重复记录），返回是否记录了违规
+    // 违规记录及违规次数累加写入发件箱，随归还事务提交，之后异步执行
+    private boolean recordOverdueViolation(BorrowRecord record, LocalDate returnDate, int overdueDays) {
+        if (overdueDays <= 0 || record.isOverdueFlagged()) {
+            return false;
+        }
+        outboxService.append(OverdueReturnHandler.TYPE, record.getUserId(), new OverdueReturnHandler.Payload(
+                record.getId(), record.getUserId(), record.getBookId(), returnDate, overdueDays));
+        return true;
+    }
+
     // 获取所有借阅记录
     public List<BorrowRecord> getAllBorrowRecords() {
         return borrowRecordRepository.findAll();
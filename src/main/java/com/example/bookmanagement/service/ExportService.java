@@ -0,0 +1,304 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.security.TooManyRequestsException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 大表导出（NDJSON / CSV，可选gzip）
+ * - 只读游标逐行读取（MySQL fetchSize=Integer.MIN_VALUE为流式结果集），边读边写入响应流，内存占用与表大小无关
+ * - 在MVC异步线程中执行，不占用请求线程；同时进行的导出数有上限（每个导出占用一个数据库连接直到写完）
+ * - 客户端中途断开时取消查询，避免驱动关闭流式结果集时读完剩余行
+ */
+@Service
+public class ExportService {
+    private static final Logger log = LoggerFactory.getLogger(ExportService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * 可导出的数据集（列别名即导出字段名；用户表不导出密码）
+     */
+    public enum Dataset {
+        BORROW_RECORDS("borrow-records", "SELECT id, user_id AS userId, book_id AS bookId, borrow_time AS borrowTime, " +
+                "due_date AS dueDate, return_time AS returnTime, is_returned AS returned, overdue_flagged AS overdueFlagged " +
+                "FROM borrow_records ORDER BY id"),
+        VIOLATIONS("violations", "SELECT id, user_id AS userId, book_id AS bookId, violation_date AS violationDate, " +
+                "reason, overdue_days AS overdueDays FROM violations ORDER BY id"),
+        USERS("users", "SELECT id, username, role, enabled, violation_count AS violationCount FROM users ORDER BY id");
+
+        private final String fileName;
+        private final String sql;
+
+        Dataset(String fileName, String sql) {
+            this.fileName = fileName;
+            this.sql = sql;
+        }
+    }
+
+    public enum Format {
+        NDJSON("ndjson", "application/x-ndjson"),
+        CSV("csv", "text/csv");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+
+    private final LongAdder exports = new LongAdder();
+    private final LongAdder rowsExported = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ExportService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                         @Value("${export.max-concurrent:2}") int maxConcurrent) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent);
+    }
+
+    /**
+     * 构造导出响应；导出名额已满时抛出TooManyRequestsException（尚未开始写响应）
+     * 名额在请求线程占用（以便直接返回429），以下任一情况释放且只释放一次：
+     * 响应体写完/写出错；异步请求结束（含超时、客户端断开、响应体未被执行）；构造响应失败
+     */
+    public ResponseEntity<StreamingResponseBody> export(Dataset dataset, Format format, boolean gzip) {
+        Format fmt = format == null ? Format.NDJSON : format;
+        if (!permits.tryAcquire()) {
+            rejected.increment();
+            throw new TooManyRequestsException("导出任务过多，请稍后再试", 30);
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+        try {
+            releaseOnAsyncCompletion(release);
+            String fileName = dataset.fileName + "-" + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)
+                    + "." + fmt.extension + (gzip ? ".gz" : "");
+            StreamingResponseBody body = out -> {
+                try {
+                    write(dataset, fmt, gzip, out);
+                } finally {
+                    release.run();
+                }
+            };
+            return ResponseEntity.ok()
+                    .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                            : MediaType.parseMediaType(fmt.contentType + ";charset=UTF-8"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(fileName).build().toString())
+                    .body(body);
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+
+    // 异步请求结束时（正常完成、超时、出错、任务未能提交）兜底释放名额；不在Web请求中调用时只依赖响应体释放
+    private static void releaseOnAsyncCompletion(Runnable release) {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return;
+        }
+        WebAsyncUtils.getAsyncManager(attributes.getRequest()).registerCallableInterceptor(release,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        release.run();
+                    }
+                });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("running", maxConcurrent - permits.availablePermits());
+        stats.put("exports", exports.sum());
+        stats.put("rowsExported", rowsExported.sum());
+        stats.put("aborted", aborted.sum());
+        stats.put("rejected", rejected.sum());
+        return stats;
+    }
+
+    private void write(Dataset dataset, Format format, boolean gzip, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        OutputStream target = gzip ? gzipOut : out;
+        if (format == Format.CSV) {
+            // BOM：Excel按UTF-8打开中文
+            target.write(UTF8_BOM);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        Long rows;
+        try {
+            rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+                try (PreparedStatement ps = con.prepareStatement(dataset.sql,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        try {
+                            return format == Format.CSV ? writeCsv(rs, writer) : writeNdjson(rs, writer);
+                        } catch (UncheckedIOException e) {
+                            // 客户端断开：先取消查询，关闭结果集时不再读完剩余行
+                            ps.cancel();
+                            throw e;
+                        }
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            aborted.increment();
+            log.warn("导出中断（客户端断开）：dataset={}，原因={}", dataset, e.getCause().getMessage());
+            throw e.getCause();
+        }
+
+        writer.flush();
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+        exports.increment();
+        log.info("导出完成：dataset={}，格式={}，gzip={}，行数={}，耗时={}ms",
+                dataset, format, gzip, rows, System.currentTimeMillis() - start);
+    }
+
+    private long writeNdjson(ResultSet rs, Writer writer) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        long count = 0;
+        try {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // 每行一个JSON对象，行间用换行分隔
+            generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            while (rs.next()) {
+                generator.writeStartObject();
+                for (int i = 1; i <= columns; i++) {
+                    generator.writeFieldName(meta.getColumnLabel(i));
+                    generator.writeObject(toExportValue(rs.getObject(i)));
+                }
+                generator.writeEndObject();
+                count++;
+                rowsExported.increment();
+            }
+            generator.writeRaw('\n');
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    private long writeCsv(ResultSet rs, Writer writer) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        long count = 0;
+        try {
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                writer.write(csvEscape(meta.getColumnLabel(i)));
+            }
+            writer.write("\r\n");
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) {
+                        writer.write(',');
+                    }
+                    Object value = toExportValue(rs.getObject(i));
+                    if (value != null) {
+                        writer.write(csvEscape(value.toString()));
+                    }
+                }
+                writer.write("\r\n");
+                count++;
+                rowsExported.increment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    // 日期类型统一输出为ISO字符串
+    private static Object toExportValue(Object value) {
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate().toString();
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime().toString();
+        }
+        if (value instanceof TemporalAccessor) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    // RFC 4180：含逗号、引号、换行的字段加引号，引号转义为两个引号
+    private static String csvEscape(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+}
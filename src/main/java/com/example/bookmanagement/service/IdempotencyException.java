@@ -0,0 +1,19 @@
+package com.example.bookmanagement.service;
+
+/**
+ * Idempotency-Key校验失败（Key格式错误 / 同一Key用于不同请求 / 首次请求仍在处理中）
+ */
+public class IdempotencyException extends RuntimeException {
+
+    // 对应的HTTP状态码：400 / 422 / 409
+    private final int status;
+
+    public IdempotencyException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
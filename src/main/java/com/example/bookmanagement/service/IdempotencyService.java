@@ -0,0 +1,181 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.model.IdempotencyRecord;
+import com.example.bookmanagement.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 幂等请求处理（Idempotency-Key）
+ * - 首次请求先占用Key（INSERT IGNORE，并发重试只有一个能执行），执行成功后保存响应
+ * - 重试请求直接返回保存的响应，不再执行业务逻辑
+ * - 本地有界缓存 + 数据库持久化，Key在幂等有效期（idempotency.ttl-hours）后清理
+ * - 业务失败（success=false）或抛异常时释放Key，客户端可用同一Key重试
+ */
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final BoundedCache<String, IdempotencyRecord> idempotencyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ClusterScheduler clusterScheduler;
+
+    @Value("${idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    /**
+     * 执行结果：响应体 + 是否为重放的首次响应
+     */
+    public record Outcome(Map<String, Object> body, boolean replayed) {
+    }
+
+    /**
+     * 按Idempotency-Key执行业务（未携带Key时直接执行）
+     *
+     * @param scope       接口标识（如 borrow / return）
+     * @param username    当前登录用户
+     * @param key         请求头中的Idempotency-Key
+     * @param fingerprint 请求指纹，见 {@link #fingerprint(String...)}
+     */
+    public Outcome execute(String scope, String username, String key, String fingerprint,
+                           Supplier<Map<String, Object>> action) {
+        if (!StringUtils.hasText(key)) {
+            return new Outcome(action.get(), false);
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IdempotencyException(400, "Idempotency-Key长度不能超过" + MAX_KEY_LENGTH);
+        }
+        String requestKey = username + ":" + scope + ":" + key;
+
+        IdempotencyRecord cached = idempotencyCache.get(requestKey);
+        if (cached != null) {
+            return replay(cached, fingerprint);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Boolean claimed = transactionTemplate.execute(status -> {
+            idempotencyRecordRepository.deleteIfExpired(requestKey, now);
+            return idempotencyRecordRepository.claim(requestKey, fingerprint, now, now.plusHours(ttlHours)) == 1;
+        });
+        if (!Boolean.TRUE.equals(claimed)) {
+            IdempotencyRecord existing = idempotencyRecordRepository.findById(requestKey)
+                    .orElseThrow(() -> new IdempotencyException(409, "相同请求正在处理中，请稍后重试"));
+            if (IdempotencyRecord.STATUS_COMPLETED.equals(existing.getStatus())) {
+                idempotencyCache.put(requestKey, existing);
+                return replay(existing, fingerprint);
+            }
+            if (!existing.getFingerprint().equals(fingerprint)) {
+                throw new IdempotencyException(422, "Idempotency-Key已用于其他请求");
+            }
+            throw new IdempotencyException(409, "相同请求正在处理中，请稍后重试");
+        }
+
+        Map<String, Object> body;
+        try {
+            body = action.get();
+        } catch (RuntimeException e) {
+            release(requestKey);
+            throw e;
+        }
+        if (!Boolean.TRUE.equals(body.get("success"))) {
+            release(requestKey);
+            return new Outcome(body, false);
+        }
+
+        try {
+            String json = objectMapper.writeValueAsString(body);
+            transactionTemplate.executeWithoutResult(status -> idempotencyRecordRepository.complete(requestKey, json));
+
+            IdempotencyRecord completed = new IdempotencyRecord();
+            completed.setRequestKey(requestKey);
+            completed.setFingerprint(fingerprint);
+            completed.setStatus(IdempotencyRecord.STATUS_COMPLETED);
+            completed.setResponseBody(json);
+            completed.setCreatedAt(now);
+            completed.setExpiresAt(now.plusHours(ttlHours));
+            idempotencyCache.put(requestKey, completed);
+        } catch (Exception e) {
+            // 业务已提交：记录保持PENDING，过期前的重试返回409而不会重复执行
+            log.error("保存幂等响应失败：requestKey={}，原因={}", requestKey, e.getMessage());
+        }
+        return new Outcome(body, false);
+    }
+
+    private Outcome replay(IdempotencyRecord record, String fingerprint) {
+        if (!record.getFingerprint().equals(fingerprint)) {
+            throw new IdempotencyException(422, "Idempotency-Key已用于其他请求");
+        }
+        try {
+            Map<String, Object> body = objectMapper.readValue(record.getResponseBody(),
+                    new TypeReference<LinkedHashMap<String, Object>>() {
+                    });
+            log.info("幂等重放：requestKey={}", record.getRequestKey());
+            return new Outcome(body, true);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("幂等响应解析失败");
+        }
+    }
+
+    private void release(String requestKey) {
+        transactionTemplate.executeWithoutResult(status -> idempotencyRecordRepository.release(requestKey));
+    }
+
+    /**
+     * 请求指纹：各部分按顺序拼接后取SHA-256
+     */
+    public static String fingerprint(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> getCacheStats() {
+        return idempotencyCache.stats();
+    }
+
+    /**
+     * 每小时清理过期的幂等记录（集群内只在一个节点执行）
+     */
+    @Scheduled(cron = "0 30 * * * *")
+    public void cleanupExpired() {
+        clusterScheduler.runExclusive("idempotency-cleanup", 600, () -> {
+            Integer deleted = transactionTemplate.execute(status ->
+                    idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+            log.info("清理过期幂等记录：{}条", deleted);
+        });
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.model.Book;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 书籍排行榜（内存有序索引，增量维护）
+ * - 榜单：borrows（累计借阅次数）、rating（平均评分，评价数不少于阈值才上榜）、recent（近N天借阅次数）
+ * - 范围：全部书籍（all）+ 每个分类
+ * - 每个 榜单×范围 一个按（值降序、ID升序）排列的TreeSet，借阅/评价审核时O(log n)调整位置，取前K名O(K)
+ * - 近N天借阅按天分桶，跨天时整体重算一次
+ * - 每个节点各自维护，定期从数据库全量对账（其他节点的借阅、手工改库等）
+ * - 对账在锁外读库构建新数据，期间本节点的增量修改记入pendingChanges，切换前按顺序重放，不会丢失
+ */
+@Service
+@RequiredArgsConstructor
+public class LeaderboardService {
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    public static final String BORROWS = "borrows";
+    public static final String RATING = "rating";
+    public static final String RECENT = "recent";
+    public static final String ALL = "all";
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${leaderboard.rating.min-comments:5}")
+    private int minComments;
+
+    @Value("${leaderboard.recent.window-days:7}")
+    private int windowDays;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, BookStat> stats = new HashMap<>();
+    // 榜单 -> 范围 -> 有序索引
+    private Map<String, Map<String, NavigableSet<RankKey>>> boards = newBoards();
+    // 近N天借阅的当前日期（跨天时重算）
+    private volatile long currentDay = LocalDate.now().toEpochDay();
+    // 对账期间本节点的增量修改（按顺序记录，切换前重放到新数据），非对账期间为null
+    private List<Change> pendingChanges;
+    // 同一时刻只允许一个对账（启动与定时任务可能重叠）
+    private final Object reconcileMutex = new Object();
+
+    // 一次增量修改：同时作用于当前数据，并在对账期间重放到新数据
+    @FunctionalInterface
+    private interface Change {
+        void apply(Map<Long, BookStat> stats, Map<String, Map<String, NavigableSet<RankKey>>> boards);
+    }
+
+    private record RankKey(double value, long bookId) {
+    }
+
+    private static final Comparator<RankKey> RANK_ORDER = Comparator.comparingDouble(RankKey::value).reversed()
+            .thenComparingLong(RankKey::bookId);
+
+    // 单本书的排行数据
+    private static final class BookStat {
+        long id;
+        String name;
+        String author;
+        String category;
+        long borrowCount;
+        long scoreSum;
+        long commentCount;
+        double avgScore;
+        // 按天分桶的借阅次数：slot = epochDay % windowDays，bucketDays记录每个桶对应的日期
+        long[] buckets;
+        long[] bucketDays;
+        long recent;
+    }
+
+    /**
+     * 启动时及每10分钟从数据库对账
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void reconcile() {
+        synchronized (reconcileMutex) {
+            lock.writeLock().lock();
+            try {
+                pendingChanges = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Map<Long, BookStat> fresh = new HashMap<>();
+            Map<String, Map<String, NavigableSet<RankKey>>> freshBoards = newBoards();
+            long start = System.currentTimeMillis();
+            long today = LocalDate.now().toEpochDay();
+            try {
+                load(fresh, freshBoards, today);
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    pendingChanges = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            // 重放对账期间的增量（读库之前已提交、重放时再计一次的借阅，由下次对账纠正）
+            int replayed;
+            lock.writeLock().lock();
+            try {
+                replayed = pendingChanges.size();
+                for (Change change : pendingChanges) {
+                    change.apply(fresh, freshBoards);
+                }
+                pendingChanges = null;
+                stats = fresh;
+                boards = freshBoards;
+                currentDay = today;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("排行榜对账完成：书籍数={}，重放增量={}，耗时={}ms", fresh.size(), replayed,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    // 从数据库全量加载排行数据并建立索引（不持有锁）
+    private void load(Map<Long, BookStat> fresh, Map<String, Map<String, NavigableSet<RankKey>>> freshBoards,
+                      long today) {
+        // 评分以聚合表为准（与BookScoreStatsService一致），没有评价的书为0
+        jdbcTemplate.query("SELECT b.id, b.name, b.author, b.category, b.borrow_count, " +
+                        "COALESCE(s.score_sum, 0) AS score_sum, COALESCE(s.score_count, 0) AS score_count " +
+                        "FROM book b LEFT JOIN book_score_stats s ON s.book_id = b.id",
+                rs -> {
+                    BookStat stat = newStat(rs.getLong("id"));
+                    stat.name = rs.getString("name");
+                    stat.author = rs.getString("author");
+                    stat.category = rs.getString("category");
+                    stat.borrowCount = rs.getLong("borrow_count");
+                    stat.scoreSum = rs.getLong("score_sum");
+                    stat.commentCount = rs.getLong("score_count");
+                    stat.avgScore = stat.commentCount == 0 ? 0.0 : (double) stat.scoreSum / stat.commentCount;
+                    fresh.put(stat.id, stat);
+                });
+
+        // 近N天借阅按天汇总（走idx_borrow_time索引）
+        jdbcTemplate.query("SELECT book_id, borrow_time, COUNT(*) AS cnt FROM borrow_records " +
+                        "WHERE borrow_time > ? GROUP BY book_id, borrow_time",
+                rs -> {
+                    BookStat stat = fresh.get(rs.getLong("book_id"));
+                    if (stat != null) {
+                        addToBucket(stat, rs.getDate("borrow_time").toLocalDate().toEpochDay(), rs.getLong("cnt"));
+                    }
+                },
+                Date.valueOf(LocalDate.ofEpochDay(today - windowDays)));
+
+        for (BookStat stat : fresh.values()) {
+            stat.recent = recentSum(stat, today);
+            index(freshBoards, stat);
+        }
+    }
+
+    /**
+     * 借阅成功（事务提交后调用）：累计借阅和近N天借阅+1
+     */
+    public void recordBorrow(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            rollDayIfNeeded();
+            long day = currentDay;
+            record((target, targetBoards) -> {
+                BookStat stat = target.get(bookId);
+                if (stat == null) {
+                    return;
+                }
+                unindex(targetBoards, stat);
+                stat.borrowCount++;
+                addToBucket(stat, day, 1);
+                stat.recent = recentSum(stat, day);
+                index(targetBoards, stat);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 评价计入/移除评分统计（事务提交后调用）：sign为+1或-1
+     */
+    public void applyScoreDelta(Long bookId, int score, int sign) {
+        lock.writeLock().lock();
+        try {
+            record((target, targetBoards) -> {
+                BookStat stat = target.get(bookId);
+                if (stat == null) {
+                    return;
+                }
+                unindex(targetBoards, stat);
+                stat.scoreSum += (long) score * sign;
+                stat.commentCount = Math.max(0, stat.commentCount + sign);
+                stat.avgScore = stat.commentCount == 0 ? 0.0 : (double) stat.scoreSum / stat.commentCount;
+                index(targetBoards, stat);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 书籍新增/修改（书名、分类可能变化）
+     */
+    public void onBookSaved(Book book) {
+        if (book == null || book.getId() == null) {
+            return;
+        }
+        long bookId = book.getId();
+        long borrowCount = book.getBorrowCount();
+        String name = book.getName();
+        String author = book.getAuthor();
+        String category = book.getCategory();
+        lock.writeLock().lock();
+        try {
+            record((target, targetBoards) -> {
+                BookStat stat = target.get(bookId);
+                if (stat == null) {
+                    stat = newStat(bookId);
+                    stat.borrowCount = borrowCount;
+                    target.put(stat.id, stat);
+                } else {
+                    unindex(targetBoards, stat);
+                }
+                stat.name = name;
+                stat.author = author;
+                stat.category = category;
+                index(targetBoards, stat);
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void onBookDeleted(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            record((target, targetBoards) -> {
+                BookStat stat = target.remove(bookId);
+                if (stat != null) {
+                    unindex(targetBoards, stat);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 作用于当前数据；对账期间同时记录，切换前重放到新数据（需持有写锁）
+    private void record(Change change) {
+        change.apply(stats, boards);
+        if (pendingChanges != null) {
+            pendingChanges.add(change);
+        }
+    }
+
+    /**
+     * 批量读取排序信号（书籍检索结果排序用）：实时借阅次数、平均评分，未收录的书籍为0
+     */
+    public void rankingSignals(long[] bookIds, int count, long[] borrowCounts, double[] avgScores) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                BookStat stat = stats.get(bookIds[i]);
+                borrowCounts[i] = stat == null ? 0 : stat.borrowCount;
+                avgScores[i] = stat == null ? 0.0 : stat.avgScore;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取榜单前limit名（O(limit)，不排序、不查库）
+     *
+     * @param board    borrows / rating / recent
+     * @param category 分类，为空表示全部书籍
+     */
+    public List<Map<String, Object>> top(String board, String category, Integer limit) {
+        if (!BORROWS.equals(board) && !RATING.equals(board) && !RECENT.equals(board)) {
+            throw new RuntimeException("不支持的榜单：" + board);
+        }
+        int size = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+        String scope = StringUtils.hasText(category) ? category : ALL;
+
+        // 跨天后近N天榜单需要先重算（当天内不加写锁）
+        if (LocalDate.now().toEpochDay() != currentDay) {
+            lock.writeLock().lock();
+            try {
+                rollDayIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            NavigableSet<RankKey> ranked = boards.get(board).get(scope);
+            List<Map<String, Object>> result = new ArrayList<>(size);
+            if (ranked == null) {
+                return result;
+            }
+            Iterator<RankKey> it = ranked.iterator();
+            while (it.hasNext() && result.size() < size) {
+                RankKey key = it.next();
+                BookStat stat = stats.get(key.bookId());
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("rank", result.size() + 1);
+                entry.put("bookId", stat.id);
+                entry.put("name", stat.name);
+                entry.put("author", stat.author);
+                entry.put("category", stat.category);
+                entry.put("borrowCount", stat.borrowCount);
+                entry.put("avgScore", stat.avgScore);
+                entry.put("commentCount", stat.commentCount);
+                entry.put("recentBorrows", stat.recent);
+                result.add(entry);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("books", stats.size());
+            result.put("categories", boards.get(BORROWS).size() - 1);
+            result.put("ratingEligible", boards.get(RATING).get(ALL).size());
+            result.put("minComments", minComments);
+            result.put("windowDays", windowDays);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 跨天：所有书的近N天借阅重新求和（需持有写锁）
+    private void rollDayIfNeeded() {
+        long today = LocalDate.now().toEpochDay();
+        if (today == currentDay) {
+            return;
+        }
+        NavigableSet<RankKey> all = boards.get(RECENT).get(ALL);
+        for (BookStat stat : stats.values()) {
+            long recent = recentSum(stat, today);
+            if (recent != stat.recent) {
+                removeFromBoard(boards, RECENT, stat, stat.recent);
+                stat.recent = recent;
+                addToBoard(boards, RECENT, stat, stat.recent);
+            }
+        }
+        currentDay = today;
+        log.info("排行榜跨天：近{}天借阅榜已重算，上榜书籍数={}", windowDays, all.size());
+    }
+
+    private BookStat newStat(long id) {
+        BookStat stat = new BookStat();
+        stat.id = id;
+        stat.buckets = new long[windowDays];
+        stat.bucketDays = new long[windowDays];
+        return stat;
+    }
+
+    private void addToBucket(BookStat stat, long day, long count) {
+        int slot = (int) Math.floorMod(day, (long) windowDays);
+        if (stat.bucketDays[slot] != day) {
+            stat.bucketDays[slot] = day;
+            stat.buckets[slot] = 0;
+        }
+        stat.buckets[slot] += count;
+    }
+
+    // 最近windowDays天（含今天）的借阅次数
+    private long recentSum(BookStat stat, long today) {
+        long sum = 0;
+        for (int i = 0; i < windowDays; i++) {
+            if (stat.bucketDays[i] > today - windowDays && stat.bucketDays[i] <= today) {
+                sum += stat.buckets[i];
+            }
+        }
+        return sum;
+    }
+
+    // ========== 有序索引维护 ==========
+    private Map<String, Map<String, NavigableSet<RankKey>>> newBoards() {
+        Map<String, Map<String, NavigableSet<RankKey>>> result = new HashMap<>();
+        for (String board : List.of(BORROWS, RATING, RECENT)) {
+            Map<String, NavigableSet<RankKey>> scopes = new HashMap<>();
+            scopes.put(ALL, new TreeSet<>(RANK_ORDER));
+            result.put(board, scopes);
+        }
+        return result;
+    }
+
+    private void index(Map<String, Map<String, NavigableSet<RankKey>>> target, BookStat stat) {
+        addToBoard(target, BORROWS, stat, stat.borrowCount);
+        if (stat.commentCount >= minComments) {
+            addToBoard(target, RATING, stat, stat.avgScore);
+        }
+        addToBoard(target, RECENT, stat, stat.recent);
+    }
+
+    private void unindex(Map<String, Map<String, NavigableSet<RankKey>>> target, BookStat stat) {
+        removeFromBoard(target, BORROWS, stat, stat.borrowCount);
+        if (stat.commentCount >= minComments) {
+            removeFromBoard(target, RATING, stat, stat.avgScore);
+        }
+        removeFromBoard(target, RECENT, stat, stat.recent);
+    }
+
+    // 近N天借阅为0的书不进入近期榜
+    private static void addToBoard(Map<String, Map<String, NavigableSet<RankKey>>> target, String board,
+                                   BookStat stat, double value) {
+        if (RECENT.equals(board) && value <= 0) {
+            return;
+        }
+        RankKey key = new RankKey(value, stat.id);
+        Map<String, NavigableSet<RankKey>> scopes = target.get(board);
+        scopes.get(ALL).add(key);
+        if (StringUtils.hasText(stat.category)) {
+            scopes.computeIfAbsent(stat.category, k -> new TreeSet<>(RANK_ORDER)).add(key);
+        }
+    }
+
+    private static void removeFromBoard(Map<String, Map<String, NavigableSet<RankKey>>> target, String board,
+                                        BookStat stat, double value) {
+        RankKey key = new RankKey(value, stat.id);
+        Map<String, NavigableSet<RankKey>> scopes = target.get(board);
+        scopes.get(ALL).remove(key);
+        if (StringUtils.hasText(stat.category)) {
+            NavigableSet<RankKey> scoped = scopes.get(stat.category);
+            if (scoped != null) {
+                scoped.remove(key);
+                if (scoped.isEmpty()) {
+                    scopes.remove(stat.category);
+                }
+            }
+        }
+    }
+}
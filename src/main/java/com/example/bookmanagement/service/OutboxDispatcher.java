@@ -0,0 +1,251 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.event.OutboxEventHandler;
+import com.example.bookmanagement.model.OutboxEvent;
+import com.example.bookmanagement.repository.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发件箱投递器（进程内）
+ * - 批量领取：一条UPDATE为一批待投递事件打上领取令牌和租约，多节点并发领取不重复
+ * - 并行投递：按聚合分组提交到工作线程池，同一聚合的事件在同一线程内按顺序处理
+ * - 每个事件一个事务：消费者的数据变更与“标记已投递”一同提交，重复领取不会重复生效
+ * - 失败按指数退避重试，超过最大次数标记FAILED；租约过期（节点宕机）的事件重新变为待投递
+ * - 事件写入的事务提交后立即唤醒投递，定时轮询兜底
+ */
+@Component
+public class OutboxDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    // 退避上限（秒）
+    private static final long MAX_BACKOFF_SECONDS = 300;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterScheduler clusterScheduler;
+    private final Map<String, OutboxEventHandler> handlers = new HashMap<>();
+
+    private final int batchSize;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+    private final int retentionDays;
+
+    private final ExecutorService workers;
+    private final ExecutorService poller;
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                            TransactionTemplate transactionTemplate,
+                            ClusterScheduler clusterScheduler,
+                            List<OutboxEventHandler> handlerList,
+                            @Value("${outbox.worker-threads:4}") int workerThreads,
+                            @Value("${outbox.batch-size:100}") int batchSize,
+                            @Value("${outbox.lease-seconds:300}") int leaseSeconds,
+                            @Value("${outbox.max-attempts:10}") int maxAttempts,
+                            @Value("${outbox.retention-days:7}") int retentionDays) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.clusterScheduler = clusterScheduler;
+        for (OutboxEventHandler handler : handlerList) {
+            handlers.put(handler.eventType(), handler);
+        }
+        this.batchSize = batchSize;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+        this.retentionDays = retentionDays;
+
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), r -> {
+            Thread t = new Thread(r, "outbox-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.poller = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "outbox-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("发件箱投递器：消费者={}，工作线程={}，批量={}", handlers.keySet(), workerThreads, batchSize);
+    }
+
+    /**
+     * 有新事件提交：异步触发一轮投递（已在投递中则忽略，本轮会继续领取到新事件）
+     */
+    public void wakeUp() {
+        if (!polling.get()) {
+            poller.execute(this::drain);
+        }
+    }
+
+    /**
+     * 定时轮询兜底（唤醒丢失、退避到期、其他节点宕机遗留的事件）
+     */
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-millis:1000}")
+    public void poll() {
+        drain();
+    }
+
+    // 连续领取投递，直到领取不满一批
+    private void drain() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (dispatchBatch() >= batchSize) {
+                // 继续领取下一批
+            }
+        } catch (Exception e) {
+            log.error("发件箱投递异常：{}", e.getMessage());
+        } finally {
+            polling.set(false);
+        }
+    }
+
+    private int dispatchBatch() {
+        String token = clusterScheduler.getNodeId() + ":" + UUID.randomUUID();
+        List<OutboxEvent> events = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            outboxEventRepository.releaseExpiredClaims(now);
+            if (outboxEventRepository.claim(token, now, now.plusSeconds(leaseSeconds), batchSize) == 0) {
+                return List.<OutboxEvent>of();
+            }
+            return outboxEventRepository.findByClaimedByOrderByIdAsc(token);
+        });
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        // 按 事件类型+聚合ID 分组，组内顺序处理，组间并行
+        Map<String, List<OutboxEvent>> groups = new LinkedHashMap<>();
+        for (OutboxEvent event : events) {
+            groups.computeIfAbsent(event.getEventType() + ":" + event.getAggregateId(), k -> new ArrayList<>()).add(event);
+        }
+        List<Future<?>> futures = new ArrayList<>(groups.size());
+        for (List<OutboxEvent> group : groups.values()) {
+            futures.add(workers.submit(() -> group.forEach(event -> deliver(event, token))));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.error("发件箱事件投递线程异常：{}", e.getCause().getMessage());
+            }
+        }
+        return events.size();
+    }
+
+    private void deliver(OutboxEvent event, String token) {
+        OutboxEventHandler handler = handlers.get(event.getEventType());
+        try {
+            if (handler == null) {
+                throw new IllegalStateException("没有消费者处理事件类型：" + event.getEventType());
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    handler.handle(event);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                // 租约已丢失（已被其他节点重新领取）：回滚本次处理，由持有者处理
+                if (outboxEventRepository.markDone(event.getId(), token, LocalDateTime.now()) == 0) {
+                    status.setRollbackOnly();
+                }
+            });
+            delivered.increment();
+        } catch (Exception e) {
+            markFailed(event, token, e);
+        }
+    }
+
+    private void markFailed(OutboxEvent event, String token, Exception e) {
+        int attempts = event.getAttempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        long backoffSeconds = Math.min(MAX_BACKOFF_SECONDS, 1L << Math.min(attempts, 20));
+        String error = String.valueOf(e.getMessage());
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        String message = error;
+        try {
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.markFailed(event.getId(), token,
+                    giveUp ? OutboxEvent.FAILED : OutboxEvent.PENDING,
+                    LocalDateTime.now().plusSeconds(backoffSeconds), message));
+        } catch (Exception ex) {
+            // 状态未能更新：租约到期后会被重新领取
+            log.error("发件箱事件状态更新失败：id={}，原因={}", event.getId(), ex.getMessage());
+        }
+        if (giveUp) {
+            failed.increment();
+            log.error("发件箱事件投递失败，已放弃：id={}，type={}，attempts={}，原因={}",
+                    event.getId(), event.getEventType(), attempts, message);
+        } else {
+            retried.increment();
+            log.warn("发件箱事件投递失败，{}秒后重试：id={}，type={}，attempts={}，原因={}",
+                    backoffSeconds, event.getId(), event.getEventType(), attempts, message);
+        }
+    }
+
+    /**
+     * 每天清理已投递的历史事件（集群内只在一个节点执行）
+     */
+    @Scheduled(cron = "0 45 3 * * *")
+    public void cleanup() {
+        clusterScheduler.runExclusive("outbox-cleanup", 600, () -> {
+            Integer deleted = transactionTemplate.execute(status ->
+                    outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays)));
+            log.info("清理已投递的发件箱事件：{}条", deleted);
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", outboxEventRepository.countByStatus(OutboxEvent.PENDING));
+        stats.put("processing", outboxEventRepository.countByStatus(OutboxEvent.PROCESSING));
+        stats.put("failed", outboxEventRepository.countByStatus(OutboxEvent.FAILED));
+        stats.put("delivered", delivered.sum());
+        stats.put("retried", retried.sum());
+        stats.put("gaveUp", failed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        poller.shutdown();
+        workers.shutdown();
+        // 等待进行中的投递完成；未完成的事件租约到期后会被重新领取
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.model.OutboxEvent;
+import com.example.bookmanagement.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * 事务发件箱：副作用（违规记录、评分统计等）以事件形式与主业务写入同一事务，
+ * 请求只承担核心写入，副作用由OutboxDispatcher在提交后异步执行
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDispatcher outboxDispatcher;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 写入事件（必须在调用方事务内，随业务数据一同提交或回滚）
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public OutboxEvent append(String eventType, Long aggregateId, Object payload) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(eventType);
+        event.setAggregateId(aggregateId);
+        try {
+            event.setPayload(objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("事件序列化失败：" + eventType);
+        }
+        event.setStatus(OutboxEvent.PENDING);
+        LocalDateTime now = LocalDateTime.now();
+        event.setCreatedAt(now);
+        event.setAvailableAt(now);
+        OutboxEvent saved = outboxEventRepository.save(event);
+
+        // 提交后立即唤醒投递，不等下一次轮询
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxDispatcher.wakeUp();
+            }
+        });
+        return saved;
+    }
+}
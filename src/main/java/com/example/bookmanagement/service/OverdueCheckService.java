@@ -1,72 +1,188 @@
 // filePath: book-management-system/src/main/java/com/example/bookmanagement/service/OverdueCheckService.java
 package com.example.bookmanagement.service;
 
+import com.example.bookmanagement.config.ClusterScheduler;
+import com.example.bookmanagement.config.IdAllocator;
 import com.example.bookmanagement.model.BorrowRecord;
-import com.example.bookmanagement.model.Violation;
 import com.example.bookmanagement.repository.BorrowRecordRepository;
+import com.example.bookmanagement.security.PrincipalCache;
+import com.example.bookmanagement.security.TokenRevocationRegistry;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Date;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * 逾期检查（增量 + 分块批处理）：
+ * - 每条借阅记录写入应还日期（dueDate），逾期处理后置overdueFlagged，保证每条记录只记一次违规
+ * - 扫描只查“未归还、未处理、dueDate早于今天”的记录（索引范围扫描），代价与新增逾期数成正比
+ * - 按固定大小分块处理，每块一个事务：违规记录JDBC批量插入，用户违规次数按用户汇总后一条UPDATE更新
+ * - 已提交的块已打标记，中途失败或重启后从剩余记录继续（可断点续跑）
+ * - 多实例部署时按 MOD(user_id, 存活节点数) 分片，各节点只处理自己分片的记录；
+ *   节点增减导致分片短暂重叠时，行锁 + 已处理标记保证不重复记违规
+ * - 逾期只在日期变化时产生，当天（同一分片）处理完成后记录内存水位，后续调度直接跳过
+ * - 启动后首轮为历史记录补齐应还日期（旧任务已处理过的逾期记录直接标记）
+ */
 @Service
 @RequiredArgsConstructor
 public class OverdueCheckService {
     private static final Logger log = LoggerFactory.getLogger(OverdueCheckService.class);
 
+    private static final String OVERDUE_REASON = "书籍逾期未归还";
+
     private final BorrowRecordRepository borrowRecordRepository;
-    private final UserService userService;
-    private final ViolationService violationService;
+    private final JdbcTemplate jdbcTemplate;
+    private final IdAllocator idAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final ClusterScheduler clusterScheduler;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
+
+    // 每块处理的记录数
+    @Value("${overdue.chunk-size:1000}")
+    private int chunkSize;
+
+    // 内存水位：已完成逾期处理的日期（重启后为空，首轮会重新查一次，已标记的记录不会重复处理）
+    private volatile LocalDate processedUpTo;
+    // 水位对应的分片（分片变化时需重新处理当天数据）
+    private volatile ClusterScheduler.Shard processedShard;
+
+    private record OverdueRow(long id, long userId, long bookId, LocalDate dueDate) {
+    }
 
     // 每分钟执行一次检查
-    @Scheduled(cron = "*/10 * * * * *")
-    @Transactional
+    @Scheduled(cron = "0 * * * * *")
     public void checkOverdueBooks() {
-        log.info("开始检查逾期书籍...");
-
         LocalDate today = LocalDate.now();
-        // 查询所有未归还且已逾期的借阅记录（借阅超过7天）
-        List<BorrowRecord> overdueRecords = borrowRecordRepository.findByIsReturnedFalseAndBorrowTimeBefore(
-                today.minusDays(7)
-        );
-
-        if (overdueRecords.isEmpty()) {
-            log.info("未发现逾期书籍");
+        ClusterScheduler.Shard shard = clusterScheduler.currentShard();
+        if (today.equals(processedUpTo) && shard.equals(processedShard)) {
             return;
         }
+        if (processedUpTo == null) {
+            // 启动后首轮：迁移历史数据，补齐应还日期
+            Integer updated = transactionTemplate.execute(status ->
+                    borrowRecordRepository.backfillDueDates(BorrowRecord.BORROW_DAYS));
+            if (updated != null && updated > 0) {
+                log.info("已为 {} 条历史借阅记录补齐应还日期", updated);
+            }
+        }
+        log.info("开始检查逾期书籍...分片={}/{}", shard.index(), shard.total());
 
-        log.info("发现 {} 条逾期记录，开始处理", overdueRecords.size());
-
-        for (BorrowRecord record : overdueRecords) {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        while (true) {
+            int processed;
             try {
-                // 计算逾期天数
-                long overdueDays = LocalDate.now().toEpochDay() - record.getBorrowTime().toEpochDay() - 7;
+                Integer count = transactionTemplate.execute(status -> processChunk(today, shard));
+                processed = count == null ? 0 : count;
+            } catch (Exception e) {
+                // 当前块整体回滚，已提交的块不受影响，下一轮调度继续处理剩余记录
+                log.error("处理逾期记录失败，已处理 {} 条，错误信息={}", total, e.getMessage());
+                return;
+            }
+            total += processed;
+            if (processed > 0) {
+                log.info("逾期处理进度：本块 {} 条，累计 {} 条", processed, total);
+            }
+            if (processed < chunkSize) {
+                break;
+            }
+        }
 
-                // 为用户添加违规记录
-                Violation violation = new Violation();
-                violation.setUserId(record.getUserId());
-                violation.setBookId(record.getBookId());
-                violation.setViolationDate(LocalDate.now());
-                violation.setReason("书籍逾期未归还");
-                violation.setOverdueDays((int) overdueDays);
+        processedUpTo = today;
+        processedShard = shard;
+        if (total == 0) {
+            log.info("未发现逾期书籍");
+        } else {
+            log.info("逾期书籍检查处理完成，共 {} 条，耗时 {}ms", total, System.currentTimeMillis() - start);
+        }
+    }
 
-                violationService.addViolation(violation);
+    /**
+     * 处理一块逾期记录（在调用方事务内）：
+     * 1. 锁定本分片一块未处理的逾期记录（FOR UPDATE，防止与归还、其他节点并发）
+     * 2. 批量插入违规记录
+     * 3. 按用户汇总违规次数，一条UPDATE完成累加和禁用判断
+     * 4. 标记已处理
+     */
+    private int processChunk(LocalDate today, ClusterScheduler.Shard shard) {
+        List<OverdueRow> rows = jdbcTemplate.query(
+                "SELECT id, user_id, book_id, due_date FROM borrow_records " +
+                        "WHERE is_returned = 0 AND overdue_flagged = 0 AND due_date < ? AND MOD(user_id, ?) = ? " +
+                        "ORDER BY due_date, id LIMIT ? FOR UPDATE",
+                (rs, rowNum) -> new OverdueRow(rs.getLong("id"), rs.getLong("user_id"),
+                        rs.getLong("book_id"), rs.getDate("due_date").toLocalDate()),
+                Date.valueOf(today), shard.total(), shard.index(), chunkSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
 
-                // 增加用户违规次数（达到3次会自动禁用）
-                userService.increaseViolationCount(record.getUserId());
+        // 批量插入违规记录（主键按号段预分配，配合rewriteBatchedStatements合并为多值INSERT）
+        Date violationDate = Date.valueOf(today);
+        long[] nextId = {idAllocator.nextRange("violations", rows.size())};
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO violations (id, user_id, book_id, violation_date, reason, overdue_days) VALUES (?, ?, ?, ?, ?, ?)",
+                rows, rows.size(), (ps, row) -> {
+                    ps.setLong(1, nextId[0]++);
+                    ps.setLong(2, row.userId());
+                    ps.setLong(3, row.bookId());
+                    ps.setDate(4, violationDate);
+                    ps.setString(5, OVERDUE_REASON);
+                    ps.setInt(6, (int) (today.toEpochDay() - row.dueDate().toEpochDay()));
+                });
 
-                log.info("处理逾期记录: 用户ID={}, 书籍ID={}, 逾期天数={}",
-                        record.getUserId(), record.getBookId(), overdueDays);
-            } catch (Exception e) {
-                log.error("处理逾期记录失败: 记录ID={}, 错误信息={}", record.getId(), e.getMessage());
-            }
+        // 按用户汇总违规次数增量
+        Map<Long, Integer> deltas = new LinkedHashMap<>();
+        for (OverdueRow row : rows) {
+            deltas.merge(row.userId(), 1, Integer::sum);
+        }
+        applyViolationDeltas(deltas);
+        // 违规次数/启用状态已变化，失效这些用户的认证缓存
+        principalCache.evictUserIds(deltas.keySet());
+        deltas.keySet().forEach(tokenRevocationRegistry::revoke);
+
+        // 标记已处理
+        List<Object> ids = new ArrayList<>(rows.size());
+        rows.forEach(row -> ids.add(row.id()));
+        jdbcTemplate.update("UPDATE borrow_records SET overdue_flagged = 1 WHERE id IN ("
+                + placeholders(ids.size()) + ")", ids.toArray());
+        return rows.size();
+    }
+
+    /**
+     * 一条UPDATE按用户累加违规次数，达到阈值同时禁用并提升安全版本号（吊销已签发Token）
+     * （MySQL按SET顺序求值，后面的判断使用的是累加后的violation_count和禁用前的enabled）
+     */
+    private void applyViolationDeltas(Map<Long, Integer> deltas) {
+        StringBuilder sql = new StringBuilder("UPDATE users SET violation_count = violation_count + CASE id");
+        List<Object> args = new ArrayList<>(deltas.size() * 3 + 1);
+        for (Map.Entry<Long, Integer> e : deltas.entrySet()) {
+            sql.append(" WHEN ? THEN ?");
+            args.add(e.getKey());
+            args.add(e.getValue());
         }
+        sql.append(" ELSE 0 END, security_version = security_version + IF(enabled = 1 AND violation_count >= ?, 1, 0)")
+                .append(", enabled = IF(violation_count >= ?, 0, enabled) WHERE id IN (")
+                .append(placeholders(deltas.size())).append(")");
+        args.add(UserService.VIOLATION_DISABLE_THRESHOLD);
+        args.add(UserService.VIOLATION_DISABLE_THRESHOLD);
+        args.addAll(deltas.keySet());
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
 
-        log.info("逾期书籍检查处理完成");
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
     }
-}
\ No newline at end of file
+}
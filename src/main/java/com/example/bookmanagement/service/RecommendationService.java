@@ -0,0 +1,301 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.LongIntHashMap;
+import com.example.bookmanagement.cache.LongObjectHashMap;
+import com.example.bookmanagement.repository.BorrowRecordRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * “借过这本书的读者还借过”推荐（物品-物品共现矩阵，内存稀疏存储）
+ * - 矩阵：书籍ID -> (书籍ID -> 共同借阅的读者数)，键用long[]开放寻址表存放，不装箱
+ * - 全量构建：流式读取借阅记录（按用户聚集），同一读者借过的书两两计数；每个读者只取最近N本，限制超大借阅历史的平方级开销
+ * - 增量更新：借阅成功后，读者第一次借的书与其借过的其他书计数+1
+ * - 每个节点各自维护，每晚全量重建一次（纠正其他节点的借阅）
+ */
+@Service
+@RequiredArgsConstructor
+public class RecommendationService {
+    private static final Logger log = LoggerFactory.getLogger(RecommendationService.class);
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 50;
+
+    private final BorrowRecordRepository borrowRecordRepository;
+
+    @Value("${recommendation.max-books-per-user:200}")
+    private int maxBooksPerUser;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private LongObjectHashMap<LongIntHashMap> matrix = new LongObjectHashMap<>();
+
+    // 全量构建期间的增量先记下（成对的书籍ID），构建完成后补到新矩阵
+    private volatile boolean rebuilding;
+    private final ConcurrentLinkedQueue<long[]> pendingPairs = new ConcurrentLinkedQueue<>();
+
+    // 最近一次全量构建的统计
+    private volatile Map<String, Object> lastRebuild = Map.of();
+
+    /**
+     * 全量构建（启动时、每晚4点15分）
+     * 只读事务内消费游标，流读完即关闭；矩阵在锁外构建好后整体替换
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 15 4 * * *")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        pendingPairs.clear();
+        try {
+            MatrixBuilder builder = new MatrixBuilder(maxBooksPerUser);
+            long rows = 0;
+            try (Stream<Object[]> stream = borrowRecordRepository.streamUserBookPairs()) {
+                for (Object[] row : (Iterable<Object[]>) stream::iterator) {
+                    rows++;
+                    if (row[0] != null && row[1] != null) {
+                        builder.accept((Long) row[0], (Long) row[1]);
+                    }
+                }
+            }
+            LongObjectHashMap<LongIntHashMap> fresh = builder.finish();
+            long users = builder.users();
+
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                long[] pair;
+                while ((pair = pendingPairs.poll()) != null) {
+                    addPair(fresh, pair[0], pair[1]);
+                }
+                matrix = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            long millis = System.currentTimeMillis() - start;
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("rows", rows);
+            info.put("users", users);
+            info.put("millis", millis);
+            info.put("rowsPerSecond", millis == 0 ? rows : rows * 1000 / millis);
+            lastRebuild = info;
+            log.info("推荐矩阵构建完成：借阅记录={}，读者={}，书籍={}，耗时={}ms", rows, users, fresh.size(), millis);
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    /**
+     * 借阅成功（事务已提交）后增量更新：只有读者第一次借的书才产生新的共现
+     * 推荐数据非关键路径，失败只记日志，由夜间重建纠正
+     */
+    public void recordBorrows(Long userId, Collection<Long> bookIds) {
+        if (userId == null || bookIds == null || bookIds.isEmpty()) {
+            return;
+        }
+        try {
+            List<Object[]> history = borrowRecordRepository.countBorrowsByBook(userId);
+            Set<Long> firstTime = new HashSet<>();
+            List<Long> others = new ArrayList<>();
+            for (Object[] row : history) {
+                Long bookId = (Long) row[0];
+                long times = (Long) row[1];
+                if (bookIds.contains(bookId) && times == 1) {
+                    firstTime.add(bookId);
+                } else if (others.size() < maxBooksPerUser) {
+                    others.add(bookId);
+                }
+            }
+            if (firstTime.isEmpty()) {
+                return;
+            }
+
+            List<long[]> pairs = new ArrayList<>();
+            List<Long> added = new ArrayList<>();
+            for (Long bookId : firstTime) {
+                for (Long other : others) {
+                    pairs.add(new long[]{bookId, other});
+                }
+                for (Long previous : added) {
+                    pairs.add(new long[]{bookId, previous});
+                }
+                added.add(bookId);
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (long[] pair : pairs) {
+                    addPair(matrix, pair[0], pair[1]);
+                    if (rebuilding) {
+                        pendingPairs.add(pair);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            log.warn("推荐矩阵增量更新失败：userId={}，bookIds={}，原因={}", userId, bookIds, e.getMessage());
+        }
+    }
+
+    /**
+     * 与指定书籍共同借阅次数最多的前limit本（次数相同按ID升序）
+     * 逐个扫描该书的共现行并维护长度为limit的有序数组，O(行长度 × limit)，limit很小
+     *
+     * @return 书籍ID -> 共同借阅的读者数（按名次排列）
+     */
+    public Map<Long, Integer> neighbours(Long bookId, Integer limit) {
+        int size = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+        long[] topIds = new long[size];
+        int[] topCounts = new int[size];
+        int[] filled = {0};
+
+        lock.readLock().lock();
+        try {
+            LongIntHashMap row = matrix.get(bookId);
+            if (row != null) {
+                row.forEach((other, count) -> insertTop(topIds, topCounts, filled, other, count));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < filled[0]; i++) {
+            result.put(topIds[i], topCounts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 内存占用统计（数组按容量估算，引用按压缩指针计）
+     */
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            long[] pairs = {0};
+            long[] bytes = {matrix.estimatedBytes()};
+            matrix.forEach((bookId, row) -> {
+                pairs[0] += row.size();
+                bytes[0] += row.estimatedBytes();
+            });
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("books", matrix.size());
+            stats.put("pairs", pairs[0]);
+            stats.put("estimatedBytes", bytes[0]);
+            stats.put("bytesPerPair", pairs[0] == 0 ? 0.0 : (double) bytes[0] / pairs[0]);
+            stats.put("maxBooksPerUser", maxBooksPerUser);
+            stats.put("lastRebuild", lastRebuild);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 共现矩阵构建器：按用户聚集的（用户ID, 书籍ID）依次传入，同一用户最新的借阅在前
+     * 每个读者只取最近maxBooksPerUser本不重复的书，读完一个读者后两两计数
+     */
+    static final class MatrixBuilder {
+        private final LongObjectHashMap<LongIntHashMap> matrix = new LongObjectHashMap<>();
+        private final long[] userBooks;
+        private long currentUser = Long.MIN_VALUE;
+        private int count;
+        private long users;
+
+        MatrixBuilder(int maxBooksPerUser) {
+            this.userBooks = new long[maxBooksPerUser];
+        }
+
+        void accept(long userId, long bookId) {
+            if (userId != currentUser) {
+                addUserPairs(matrix, userBooks, count);
+                currentUser = userId;
+                count = 0;
+                users++;
+            }
+            // 同一读者重复借同一本书只算一次；超过上限的更早借阅忽略
+            if (count < userBooks.length && !contains(userBooks, count, bookId)) {
+                userBooks[count++] = bookId;
+            }
+        }
+
+        LongObjectHashMap<LongIntHashMap> finish() {
+            addUserPairs(matrix, userBooks, count);
+            count = 0;
+            return matrix;
+        }
+
+        long users() {
+            return users;
+        }
+    }
+
+    // 同一读者借过的书两两计数（对称存储，两个方向各+1）
+    private static void addUserPairs(LongObjectHashMap<LongIntHashMap> target, long[] books, int count) {
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                addPair(target, books[i], books[j]);
+            }
+        }
+    }
+
+    private static void addPair(LongObjectHashMap<LongIntHashMap> target, long a, long b) {
+        if (a == b) {
+            return;
+        }
+        target.computeIfAbsent(a, k -> new LongIntHashMap()).addTo(b, 1);
+        target.computeIfAbsent(b, k -> new LongIntHashMap()).addTo(a, 1);
+    }
+
+    private static boolean contains(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 插入有序的前N名数组（次数降序、ID升序）
+    private static void insertTop(long[] ids, int[] counts, int[] filled, long id, int count) {
+        int n = filled[0];
+        if (n == ids.length && !ranksBefore(count, id, counts[n - 1], ids[n - 1])) {
+            return;
+        }
+        int pos = n < ids.length ? n : n - 1;
+        while (pos > 0 && ranksBefore(count, id, counts[pos - 1], ids[pos - 1])) {
+            ids[pos] = ids[pos - 1];
+            counts[pos] = counts[pos - 1];
+            pos--;
+        }
+        ids[pos] = id;
+        counts[pos] = count;
+        if (n < ids.length) {
+            filled[0] = n + 1;
+        }
+    }
+
+    private static boolean ranksBefore(int count, long id, int otherCount, long otherId) {
+        return count > otherCount || (count == otherCount && id < otherId);
+    }
+}
@@ -3,10 +3,17 @@ package com.example.bookmanagement.service;
 import com.example.bookmanagement.config.JwtService;
 import com.example.bookmanagement.dto.LoginRequest;
 import com.example.bookmanagement.dto.LoginResponse;
+import com.example.bookmanagement.event.ViolationRecordedEvent;
 import com.example.bookmanagement.model.User;
 import com.example.bookmanagement.repository.UserRepository;
+import com.example.bookmanagement.security.AdaptiveBCryptPasswordEncoder;
+import com.example.bookmanagement.security.LoginAttemptThrottler;
+import com.example.bookmanagement.security.PasswordHashingExecutor;
+import com.example.bookmanagement.security.PrincipalCache;
+import com.example.bookmanagement.security.TokenRevocationRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -15,8 +22,12 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 /**
@@ -31,24 +42,36 @@ public class UserService {
     private final PasswordEncoder passwordEncoder;
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final LoginAttemptThrottler loginAttemptThrottler;
 
     // 优化：BCrypt密码前缀正则（匹配$2a$/$2b$/$2y$）
     private static final Pattern BCRYPT_PATTERN = Pattern.compile("^\\$2[aby]\\$\\d+\\$.+$");
     // 优化：角色常量，避免硬编码
     private static final String DEFAULT_ROLE = "ROLE_USER";
+    // 违规次数达到该值自动禁用账号
+    public static final int VIOLATION_DISABLE_THRESHOLD = 3;
 
     /**
      * 登录接口核心逻辑（返回含ID的LoginResponse）
+     * 先按用户名/IP限流，再在密码哈希线程池中完成BCrypt校验
      */
-    public LoginResponse login(LoginRequest request) {
+    public LoginResponse login(LoginRequest request, String clientIp) {
         try {
+            // 0. 登录限流（超限直接拒绝，不消耗BCrypt计算）
+            loginAttemptThrottler.acquire(request.getUsername(), clientIp);
+
             // 1. 用户名密码认证（Security核心，失败会抛AuthenticationException）
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            request.getUsername(),
-                            request.getPassword()
-                    )
-            );
+            Authentication authentication = passwordHashingExecutor.execute("login",
+                    () -> authenticationManager.authenticate(
+                            new UsernamePasswordAuthenticationToken(
+                                    request.getUsername(),
+                                    request.getPassword()
+                            )
+                    ));
+            loginAttemptThrottler.reset(request.getUsername());
 
             // 2. 安全转换User实体（避免ClassCastException）
             User user;
@@ -87,7 +110,8 @@ public class UserService {
         }
 
         // 密码加密（BCrypt）
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
+        String rawPassword = user.getPassword();
+        user.setPassword(passwordHashingExecutor.execute("register", () -> passwordEncoder.encode(rawPassword)));
         log.info("用户注册：用户名={}，密码已加密", user.getUsername());
 
         // 默认值填充（避免空指针）
@@ -123,20 +147,40 @@ public class UserService {
                     return new RuntimeException("用户不存在：" + user.getId());
                 });
 
+        // 改密码、改角色、禁用时提升安全版本号，已签发的Token立即失效
+        boolean revokeTokens = false;
+
         // 优化：BCrypt密码前缀判断（兼容所有BCrypt版本）
         if (user.getPassword() != null && !BCRYPT_PATTERN.matcher(user.getPassword()).matches()) {
-            existingUser.setPassword(passwordEncoder.encode(user.getPassword()));
+            String rawPassword = user.getPassword();
+            existingUser.setPassword(passwordHashingExecutor.execute("updateUser", () -> passwordEncoder.encode(rawPassword)));
             log.info("更新用户密码：userId={}", user.getId());
+            revokeTokens = true;
+        }
+        if (!Objects.equals(existingUser.getRole(), user.getRole())
+                || (existingUser.isEnabled() && !user.isEnabled())
+                || !Objects.equals(existingUser.getUsername(), user.getUsername())) {
+            revokeTokens = true;
         }
 
+        String oldUsername = existingUser.getUsername();
+
         // 更新其他字段
         existingUser.setUsername(user.getUsername());
         existingUser.setRole(user.getRole());
         existingUser.setEnabled(user.isEnabled());
         existingUser.setViolationCount(user.getViolationCount());
+        if (revokeTokens) {
+            existingUser.setSecurityVersion(existingUser.getSecurityVersion() + 1);
+        }
 
-        // 保存更新
+        // 保存更新（用户名可能变化，新旧用户名的认证缓存都失效）
         User updatedUser = userRepository.save(existingUser);
+        principalCache.evict(oldUsername);
+        principalCache.evict(updatedUser.getUsername());
+        if (revokeTokens) {
+            tokenRevocationRegistry.revoke(updatedUser.getId());
+        }
         log.info("更新用户成功：userId={}, username={}", updatedUser.getId(), updatedUser.getUsername());
         return updatedUser;
     }
@@ -164,21 +208,55 @@ public class UserService {
     }
 
     /**
-     * 增加违规次数（达到3次自动禁用）
+     * 增加违规次数（达到3次自动禁用，一条条件UPDATE完成）
      */
+    @Transactional
     public void increaseViolationCount(Long userId) {
-        User user = getUserById(userId);
-        int newCount = user.getViolationCount() + 1;
-        user.setViolationCount(newCount);
+        if (userRepository.increaseViolationCount(userId, VIOLATION_DISABLE_THRESHOLD) == 0) {
+            log.warn("增加违规次数失败：用户不存在，userId={}", userId);
+            throw new RuntimeException("用户不存在：" + userId);
+        }
+        principalCache.evictUserId(userId);
+        // 可能因达到阈值被禁用（版本号已在同一条UPDATE中提升）
+        tokenRevocationRegistry.revoke(userId);
+        log.info("用户违规次数+1：userId={}（达到{}次自动禁用）", userId, VIOLATION_DISABLE_THRESHOLD);
+    }
 
-        // 违规次数≥3次，禁用账号
-        if (newCount >= 3) {
-            user.setEnabled(false);
-            log.warn("用户违规次数达到3次，已禁用：userId={}, username={}", userId, user.getUsername());
+    /**
+     * 违规记录写入时触发：累加违规次数并执行禁用规则
+     */
+    @EventListener
+    public void onViolationRecorded(ViolationRecordedEvent event) {
+        increaseViolationCount(event.userId());
+    }
+
+    /**
+     * 对账：禁用违规次数已达阈值但仍处于启用状态的用户（一条UPDATE）
+     */
+    @Transactional
+    public int disableUsersReachingViolationThreshold() {
+        int disabled = userRepository.disableUsersReachingViolationThreshold(VIOLATION_DISABLE_THRESHOLD);
+        if (disabled > 0) {
+            principalCache.evictAll();
+            tokenRevocationRegistry.revokeAll();
         }
+        return disabled;
+    }
 
-        userRepository.save(user);
-        log.info("用户违规次数+1：userId={}, 当前次数={}", userId, newCount);
+    /**
+     * 密码哈希代价统计：当前代价/校准结果 + 各代价的账号数
+     */
+    public Map<String, Object> getPasswordCostStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (passwordEncoder instanceof AdaptiveBCryptPasswordEncoder adaptive) {
+            stats.putAll(adaptive.stats());
+        }
+        Map<String, Long> accountsByCost = new LinkedHashMap<>();
+        for (Object[] row : userRepository.countAccountsByPasswordCost()) {
+            accountsByCost.put(String.valueOf(row[0]), ((Number) row[1]).longValue());
+        }
+        stats.put("accountsByCost", accountsByCost);
+        return stats;
     }
 
     /**
@@ -188,6 +266,7 @@ public class UserService {
         User user = getUserById(userId);
         user.setViolationCount(0);
         userRepository.save(user);
+        principalCache.evict(user.getUsername());
         log.info("重置用户违规次数：userId={}", userId);
     }
 
@@ -196,8 +275,17 @@ public class UserService {
      */
     public void toggleUserStatus(Long userId, boolean enabled) {
         User user = getUserById(userId);
+        // 禁用时提升安全版本号，已签发的Token立即失效
+        boolean revokeTokens = user.isEnabled() && !enabled;
         user.setEnabled(enabled);
+        if (revokeTokens) {
+            user.setSecurityVersion(user.getSecurityVersion() + 1);
+        }
         userRepository.save(user);
+        principalCache.evict(user.getUsername());
+        if (revokeTokens) {
+            tokenRevocationRegistry.revoke(userId);
+        }
         log.info("切换用户状态：userId={}, enabled={}", userId, enabled);
     }
 }
\ No newline at end of file
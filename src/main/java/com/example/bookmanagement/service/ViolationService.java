@@ -1,9 +1,12 @@
 package com.example.bookmanagement.service;
 
+import com.example.bookmanagement.event.ViolationRecordedEvent;
 import com.example.bookmanagement.model.Violation;
 import com.example.bookmanagement.repository.ViolationRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -11,10 +14,14 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ViolationService {
     private final ViolationRepository violationRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    // 添加违规记录
+    // 添加违规记录（发布违规事件，由用户服务累加违规次数并按规则禁用）
+    @Transactional
     public Violation addViolation(Violation violation) {
-        return violationRepository.save(violation);
+        Violation saved = violationRepository.save(violation);
+        eventPublisher.publishEvent(new ViolationRecordedEvent(saved.getId(), saved.getUserId()));
+        return saved;
     }
 
     // 按用户ID获取违规记录
@@ -0,0 +1,52 @@
+package com.example.bookmanagement;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 基准测试辅助：预热后多轮计时取最好成绩，结果累加到sink防止被JIT消除
+ * 基准测试类标记@Tag("benchmark")，默认不执行，使用 mvn test -Pbenchmark 运行
+ */
+public final class BenchmarkSupport {
+
+    private static volatile long sink;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 测量单次操作耗时（纳秒），返回多轮中最快一轮的平均值
+     */
+    public static double nanosPerOp(String name, int iterations, LongSupplier op) {
+        for (int i = 0; i < iterations; i++) {
+            sink += op.getAsLong();
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long acc = 0;
+            for (int i = 0; i < iterations; i++) {
+                acc += op.getAsLong();
+            }
+            best = Math.min(best, (double) (System.nanoTime() - start) / iterations);
+            sink += acc;
+        }
+        System.out.printf("[benchmark] %-40s %12.1f ns/op%n", name, best);
+        return best;
+    }
+
+    /**
+     * 当前堆已用字节数（先多次GC，结果为近似值）
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.bookmanagement.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 集群调度多节点测试：两个独立的Spring上下文共享同一个H2库（MySQL兼容模式），模拟两个节点
+ */
+class ClusterSchedulerMultiNodeTest {
+
+    private static final String URL = "jdbc:h2:mem:cluster_scheduler;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private JdbcTemplate jdbcTemplate;
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource());
+        jdbcTemplate.execute("DROP TABLE IF EXISTS scheduler_locks");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS scheduler_nodes");
+        jdbcTemplate.execute("CREATE TABLE scheduler_locks (name VARCHAR(64) PRIMARY KEY, locked_by VARCHAR(128), " +
+                "locked_until TIMESTAMP(6), locked_at TIMESTAMP(6))");
+        jdbcTemplate.execute("CREATE TABLE scheduler_nodes (node_id VARCHAR(128) PRIMARY KEY, " +
+                "heartbeat_at TIMESTAMP(6), started_at TIMESTAMP(6))");
+        nodeA = startNode("node-a");
+        nodeB = startNode("node-b");
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void onlyOneTaskRunsAtATimeAcrossNodesAndThreads() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+        Runnable task = () -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            sleep(20);
+            runs.incrementAndGet();
+            active.decrementAndGet();
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                ClusterScheduler scheduler = scheduler(i % 2 == 0 ? nodeA : nodeB);
+                futures.add(pool.submit(() -> {
+                    for (int round = 0; round < 25; round++) {
+                        scheduler.runExclusive("exclusive-job", 30, task);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(runs.get()).isPositive();
+        assertThat(maxActive.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sameNodeCannotReenterAndReleaseIsPerAcquisition() throws Exception {
+        ClusterScheduler a = scheduler(nodeA);
+        ClusterScheduler b = scheduler(nodeB);
+        CountDownLatch acquired = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> holder = pool.submit(() -> a.runExclusive("reentry-job", 30, () -> {
+                acquired.countDown();
+                await(release);
+            }));
+            assertThat(acquired.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // 同一节点的第二次加锁同样被拒绝，且它的结束不会释放第一次持有的锁
+            assertThat(a.runExclusive("reentry-job", 30, () -> {
+            })).isFalse();
+            assertThat(b.tryLock("reentry-job", 30)).isNull();
+
+            release.countDown();
+            assertThat(holder.get(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(b.runExclusive("reentry-job", 30, () -> {
+        })).isTrue();
+    }
+
+    @Test
+    void staleTokenCannotReleaseAnotherHoldersLock() {
+        ClusterScheduler a = scheduler(nodeA);
+        ClusterScheduler b = scheduler(nodeB);
+
+        String stale = a.tryLock("stale-job", 1);
+        assertThat(stale).isNotNull();
+        jdbcTemplate.update("UPDATE scheduler_locks SET locked_until = TIMESTAMPADD(SECOND, -1, NOW(3)) WHERE name = ?",
+                "stale-job");
+        String current = b.tryLock("stale-job", 30);
+        assertThat(current).isNotNull();
+
+        // A的租约早已过期，用旧令牌释放/续约不影响B
+        a.unlock("stale-job", stale);
+        assertThat(a.renew("stale-job", stale, 30)).isFalse();
+        assertThat(a.tryLock("stale-job", 30)).isNull();
+        b.unlock("stale-job", current);
+        assertThat(a.tryLock("stale-job", 30)).isNotNull();
+    }
+
+    @Test
+    void leaseIsRenewedWhileLongTaskRuns() throws Exception {
+        ClusterScheduler a = scheduler(nodeA);
+        ClusterScheduler b = scheduler(nodeB);
+        CountDownLatch started = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // 租约1秒，任务执行3秒
+            Future<Boolean> longTask = pool.submit(() -> a.runExclusive("long-job", 1, () -> {
+                started.countDown();
+                sleep(3000);
+            }));
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            long deadline = System.currentTimeMillis() + 2500;
+            while (System.currentTimeMillis() < deadline) {
+                assertThat(b.tryLock("long-job", 1)).isNull();
+                sleep(100);
+            }
+            assertThat(longTask.get(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(b.tryLock("long-job", 1)).isNotNull();
+    }
+
+    @Test
+    void heartbeatsSplitShardsBetweenNodes() {
+        ClusterScheduler a = scheduler(nodeA);
+        ClusterScheduler b = scheduler(nodeB);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (a.currentShard().total() < 2 && System.currentTimeMillis() < deadline) {
+            sleep(50);
+        }
+        ClusterScheduler.Shard shardA = a.currentShard();
+        ClusterScheduler.Shard shardB = b.currentShard();
+        assertThat(shardA.total()).isEqualTo(2);
+        assertThat(shardB.total()).isEqualTo(2);
+        assertThat(shardA.index()).isNotEqualTo(shardB.index());
+
+        // 节点停机后注销，另一个节点独占全部分片
+        nodeB.close();
+        assertThat(a.currentShard()).isEqualTo(new ClusterScheduler.Shard(0, 1));
+    }
+
+    private static AnnotationConfigApplicationContext startNode(String nodeId) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("node", Map.of(
+                "scheduler.node-id", nodeId,
+                "scheduler.heartbeat-interval-millis", "200",
+                "scheduler.node-timeout-seconds", "5")));
+        context.registerBean(DataSource.class, ClusterSchedulerMultiNodeTest::dataSource);
+        context.registerBean(JdbcTemplate.class, () -> new JdbcTemplate(context.getBean(DataSource.class)));
+        context.register(ClusterScheduler.class);
+        context.refresh();
+        return context;
+    }
+
+    private static DataSource dataSource() {
+        return new DriverManagerDataSource(URL);
+    }
+
+    private static ClusterScheduler scheduler(AnnotationConfigApplicationContext context) {
+        return context.getBean(ClusterScheduler.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.bookmanagement.config;
+
+import com.example.bookmanagement.BenchmarkSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 主键分配基准：
+ * - 取号开销：不同号段大小下每个ID的平均耗时（号段为1即每个ID一次取号事务）
+ * - 批量写入：IDENTITY逐行INSERT并取回自增主键 vs nextRange预分配主键后JDBC批量INSERT
+ * 默认使用H2内存库；连接MySQL时网络往返的差距更明显：
+ * 运行：mvn test -Pbenchmark -Dtest=IdAllocatorBenchmarkTest [-Dbenchmark.rows=100000]
+ *      [-Dbenchmark.jdbc.url=jdbc:mysql://... -Dbenchmark.jdbc.username=... -Dbenchmark.jdbc.password=...]
+ */
+@Tag("benchmark")
+class IdAllocatorBenchmarkTest {
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url",
+            "jdbc:h2:mem:id_allocator_bench;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    private static final String USERNAME = System.getProperty("benchmark.jdbc.username", "sa");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "");
+    private static final int CHUNK = 1000;
+
+    private JdbcTemplate jdbcTemplate;
+    private final List<IdAllocator> allocators = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, USERNAME, PASSWORD));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS id_blocks");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS bench_identity");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS bench_allocated");
+        jdbcTemplate.execute("CREATE TABLE id_blocks (name VARCHAR(64) PRIMARY KEY, next_value BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE bench_identity (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE bench_allocated (id BIGINT PRIMARY KEY, title VARCHAR(64))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocators.forEach(IdAllocator::close);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS bench_identity");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS bench_allocated");
+    }
+
+    @Test
+    void largerBlocksMakeIdsCheaper() {
+        IdAllocator perId = allocator(1);
+        IdAllocator blocked = allocator(100);
+        IdAllocator large = allocator(1000);
+
+        double single = BenchmarkSupport.nanosPerOp("next() block-size=1", 2_000, () -> perId.next("bench_allocated"));
+        double hundred = BenchmarkSupport.nanosPerOp("next() block-size=100", 200_000,
+                () -> blocked.next("bench_allocated"));
+        double thousand = BenchmarkSupport.nanosPerOp("next() block-size=1000", 200_000,
+                () -> large.next("bench_allocated"));
+
+        System.out.printf("[benchmark] speedup block-size=100 vs 1: %.1fx, 1000 vs 1: %.1fx%n",
+                single / hundred, single / thousand);
+        assertThat(hundred).isLessThan(single);
+    }
+
+    @Test
+    void preallocatedIdsAllowBatchedInserts() throws SQLException {
+        int rows = Integer.getInteger("benchmark.rows", 100_000);
+        IdAllocator allocator = allocator(100);
+
+        long identityMillis;
+        long allocatedMillis;
+        try (Connection con = DriverManager.getConnection(URL, USERNAME, PASSWORD)) {
+            con.setAutoCommit(false);
+            // 预热
+            insertIdentity(con, CHUNK);
+            insertAllocated(con, allocator, CHUNK);
+            con.createStatement().execute("DELETE FROM bench_identity");
+            con.createStatement().execute("DELETE FROM bench_allocated");
+            con.commit();
+
+            long start = System.nanoTime();
+            insertIdentity(con, rows);
+            identityMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            insertAllocated(con, allocator, rows);
+            allocatedMillis = (System.nanoTime() - start) / 1_000_000;
+        }
+
+        System.out.printf("[benchmark] %-44s %8s %12s%n", "", "millis", "rows/s");
+        System.out.printf("[benchmark] %-44s %8d %12.0f%n", "IDENTITY, row-by-row + getGeneratedKeys",
+                identityMillis, rows * 1000.0 / Math.max(1, identityMillis));
+        System.out.printf("[benchmark] %-44s %8d %12.0f%n", "nextRange + JDBC batch (chunk=" + CHUNK + ")",
+                allocatedMillis, rows * 1000.0 / Math.max(1, allocatedMillis));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bench_identity", Long.class)).isEqualTo(rows);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM bench_allocated", Long.class)).isEqualTo(rows);
+    }
+
+    // 旧方式：自增主键，每行一条INSERT并取回主键（Hibernate IDENTITY无法批量）
+    private static void insertIdentity(Connection con, int rows) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO bench_identity (title) VALUES (?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "title-" + i);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                }
+                if ((i + 1) % CHUNK == 0) {
+                    con.commit();
+                }
+            }
+        }
+        con.commit();
+    }
+
+    // 新方式：每块先取一段连续ID，再批量INSERT（与BookImportService.insertBooks相同）
+    private static void insertAllocated(Connection con, IdAllocator allocator, int rows) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO bench_allocated (id, title) VALUES (?, ?)")) {
+            for (int offset = 0; offset < rows; offset += CHUNK) {
+                int size = Math.min(CHUNK, rows - offset);
+                long firstId = allocator.nextRange("bench_allocated", size);
+                for (int i = 0; i < size; i++) {
+                    ps.setLong(1, firstId + i);
+                    ps.setString(2, "title-" + (offset + i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+            }
+        }
+    }
+
+    private IdAllocator allocator(int blockSize) {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(URL);
+        properties.setUsername(USERNAME);
+        properties.setPassword(PASSWORD);
+        IdAllocator allocator = new IdAllocator(properties, 2, blockSize, 0);
+        allocators.add(allocator);
+        return allocator;
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.bookmanagement.config;
+
+import com.example.bookmanagement.model.IdBlock;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 主键号段分配测试（H2，MySQL兼容模式）
+ * - 业务连接池被占满时仍能取号段（取号段使用独立连接池）
+ * - 多节点并发分配不重复，首次按现有MAX(id)初始化
+ * - 同一JVM内多个Spring上下文各自使用自己的IdAllocator
+ */
+class IdAllocatorTest {
+
+    private static final String URL = "jdbc:h2:mem:id_allocator;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private JdbcTemplate jdbcTemplate;
+    private final List<IdAllocator> allocators = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(URL, "sa", ""));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS id_blocks");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS book");
+        jdbcTemplate.execute("CREATE TABLE id_blocks (name VARCHAR(64) PRIMARY KEY, next_value BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE book (id BIGINT PRIMARY KEY, title VARCHAR(64))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocators.forEach(IdAllocator::close);
+    }
+
+    @Test
+    void reservesBlocksWhileBusinessPoolIsSaturated() throws Exception {
+        // 业务连接池：2个连接，取不到连接1秒超时
+        HikariDataSource businessPool = new HikariDataSource();
+        businessPool.setJdbcUrl(URL);
+        businessPool.setUsername("sa");
+        businessPool.setMaximumPoolSize(2);
+        businessPool.setConnectionTimeout(1000);
+        IdAllocator allocator = allocator(1, 5, 0);
+
+        // 每个线程都在持有业务连接的事务中取号段并写入（与BookImportService.insertBooks相同）
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int round = 0; round < 20; round++) {
+                        try (Connection con = businessPool.getConnection()) {
+                            con.setAutoCommit(false);
+                            long first = allocator.nextRange("book", 3);
+                            try (PreparedStatement ps = con.prepareStatement("INSERT INTO book (id, title) VALUES (?, ?)")) {
+                                for (long id = first; id < first + 3; id++) {
+                                    ps.setLong(1, id);
+                                    ps.setString(2, "t" + id);
+                                    ps.addBatch();
+                                }
+                                ps.setLong(1, allocator.next("book"));
+                                ps.setString(2, "single");
+                                ps.addBatch();
+                                ps.executeBatch();
+                            }
+                            con.commit();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            businessPool.close();
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book", Long.class)).isEqualTo(8 * 20 * 4);
+    }
+
+    @Test
+    void seedsFromExistingMaxIdOnlyUpwards() {
+        jdbcTemplate.update("INSERT INTO book (id, title) VALUES (500, 'old')");
+        IdAllocator nodeA = allocator(2, 10, 20);
+        assertThat(nodeA.next("book")).isEqualTo(521);
+        assertThat(nodeA.nextRange("book", 5)).isEqualTo(531);
+
+        // 另一个节点初始化时，号段已高于MAX(id)，不会回退
+        IdAllocator nodeB = allocator(2, 10, 20);
+        assertThat(nodeB.next("book")).isEqualTo(536);
+        assertThat(jdbcTemplate.queryForObject("SELECT next_value FROM id_blocks WHERE name = 'book'", Long.class))
+                .isEqualTo(546);
+    }
+
+    @Test
+    void twoNodesNeverHandOutTheSameId() throws Exception {
+        IdAllocator nodeA = allocator(2, 7, 0);
+        IdAllocator nodeB = allocator(2, 7, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < 6; t++) {
+                IdAllocator allocator = t % 2 == 0 ? nodeA : nodeB;
+                boolean ranges = t % 3 == 0;
+                futures.add(pool.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    for (int i = 0; i < 300; i++) {
+                        if (ranges) {
+                            long first = allocator.nextRange("book", 4);
+                            for (long id = first; id < first + 4; id++) {
+                                ids.add(id);
+                            }
+                        } else {
+                            ids.add(allocator.next("book"));
+                        }
+                    }
+                    return ids;
+                }));
+            }
+            Set<Long> unique = new HashSet<>();
+            int total = 0;
+            for (Future<List<Long>> future : futures) {
+                List<Long> ids = future.get(60, TimeUnit.SECONDS);
+                unique.addAll(ids);
+                total += ids.size();
+            }
+            assertThat(unique).hasSize(total);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void generatorUsesAllocatorOfItsOwnContext() {
+        AnnotationConfigApplicationContext first = jpaContext("id_allocator_ctx_a");
+        AnnotationConfigApplicationContext second = jpaContext("id_allocator_ctx_b");
+        try {
+            new JdbcTemplate(first.getBean(DataSource.class)).update(
+                    "INSERT INTO id_blocks (name, next_value) VALUES ('widget', 1000)");
+            new JdbcTemplate(second.getBean(DataSource.class)).update(
+                    "INSERT INTO id_blocks (name, next_value) VALUES ('widget', 5000)");
+
+            assertThat(persistWidget(first)).isEqualTo(1000L);
+            assertThat(persistWidget(second)).isEqualTo(5000L);
+            assertThat(persistWidget(first)).isEqualTo(1001L);
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Entity(name = "Widget")
+    @Table(name = "widget")
+    static class Widget {
+        @Id
+        @AllocatedId("widget")
+        Long id;
+    }
+
+    private IdAllocator allocator(int poolSize, int blockSize, long seedGap) {
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(URL);
+        properties.setUsername("sa");
+        IdAllocator allocator = new IdAllocator(properties, poolSize, blockSize, seedGap);
+        allocators.add(allocator);
+        return allocator;
+    }
+
+    private static Long persistWidget(AnnotationConfigApplicationContext context) {
+        EntityManager em = context.getBean(EntityManagerFactory.class).createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Widget widget = new Widget();
+            em.persist(widget);
+            em.getTransaction().commit();
+            return widget.id;
+        } finally {
+            em.close();
+        }
+    }
+
+    // 最小JPA上下文：与Spring Boot一样把SpringBeanContainer交给Hibernate
+    private static AnnotationConfigApplicationContext jpaContext(String database) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + database + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(DataSource.class, () -> dataSource);
+        context.registerBean("entityManagerFactory", LocalContainerEntityManagerFactoryBean.class, () -> {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setManagedTypes(PersistenceManagedTypes.of(IdBlock.class.getName(), Widget.class.getName()));
+            factory.setJpaPropertyMap(Map.of(
+                    "hibernate.hbm2ddl.auto", "create-drop",
+                    "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName(),
+                    "hibernate.resource.beans.container", new SpringBeanContainer(context.getBeanFactory())));
+            return factory;
+        });
+        context.registerBean(IdAllocator.class, () -> new IdAllocator(dataSource, 10, 0));
+        context.refresh();
+        return context;
+    }
+}
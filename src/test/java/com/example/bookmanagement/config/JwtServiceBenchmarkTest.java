@@ -0,0 +1,83 @@
+package com.example.bookmanagement.config;
+
+import com.example.bookmanagement.BenchmarkSupport;
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * JWT鉴权热路径基准：
+ * - 改造前：每个请求3次完整验签（过滤器extractUsername、isTokenValid中extractUsername与extractExpiration），
+ *   每次都重新Base64解码密钥、构建解析器
+ * - 单次完整验签 vs 旧的SHA-256摘要键缓存命中 vs Token原文键缓存命中
+ * 运行：mvn test -Pbenchmark -Dtest=JwtServiceBenchmarkTest
+ */
+@Tag("benchmark")
+class JwtServiceBenchmarkTest {
+
+    private static final int ITERATIONS = 200_000;
+    private static final String SECRET = "eW91ci1zdGFyLWtlZXktMjAyNTEyMTctMTIzNDU2Nzg5MC0xMjM0NTY3ODkw=";
+
+    @Test
+    void cachedLookupIsMuchCheaperThanVerification() throws Exception {
+        BoundedCache<String, JwtService.TokenClaims> cache = new BoundedCache<>("jwt", 10_000, 600_000);
+        JwtService jwtService = new JwtService(cache);
+        ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 86_400_000L);
+        jwtService.init();
+
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("reader");
+        user.setRole("USER");
+        String token = jwtService.generateToken(user);
+
+        // 旧实现的缓存键：每次请求对整个Token做SHA-256
+        BoundedCache<String, JwtService.TokenClaims> digestCache = new BoundedCache<>("jwt-digest", 10_000, 600_000);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        digestCache.put(Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8))),
+                jwtService.parseToken(token));
+
+        double legacy = BenchmarkSupport.nanosPerOp("3x (decode key + build parser + verify) (old)", ITERATIONS / 30,
+                () -> legacyParse(token).getSubject().length()
+                        + legacyParse(token).getSubject().length()
+                        + legacyParse(token).getExpiration().getTime());
+        double verify = BenchmarkSupport.nanosPerOp("HS256 verify + parse", ITERATIONS / 10,
+                () -> jwtService.extractClaim(token, claims -> claims.getExpiration().getTime()));
+        double digestHit = BenchmarkSupport.nanosPerOp("SHA-256 key + cache hit (old)", ITERATIONS,
+                () -> {
+                    String key = Base64.getEncoder().encodeToString(
+                            sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+                    return digestCache.get(key).expiresAtMillis();
+                });
+        double tokenHit = BenchmarkSupport.nanosPerOp("token key + cache hit (parseToken)", ITERATIONS,
+                () -> jwtService.parseToken(token).expiresAtMillis());
+
+        System.out.printf("[benchmark] token length=%d, speedup vs old request path=%.1fx, vs verify=%.1fx, "
+                + "vs digest key=%.1fx%n", token.length(), legacy / tokenHit, verify / tokenHit, digestHit / tokenHit);
+        assertThat(verify).isLessThan(legacy);
+        assertThat(tokenHit).isLessThan(verify);
+        assertThat(tokenHit).isLessThan(digestHit);
+    }
+
+    // 改造前的extractAllClaims：每次调用都解码密钥、构建解析器后完整验签
+    private static Claims legacyParse(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
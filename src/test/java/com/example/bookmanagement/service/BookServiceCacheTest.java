@@ -0,0 +1,72 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 书籍缓存回填：读库期间写事务提交并失效缓存时，读到的旧行不能被放回缓存
+ * 在findById/findAllById返回前执行失效，模拟“读到旧行 -> 写事务提交并失效 -> 回填”的交错
+ */
+class BookServiceCacheTest {
+
+    private static final long BOOK_ID = 9L;
+
+    private final BookRepository bookRepository = mock(BookRepository.class);
+    private final BoundedCache<Long, Book> bookCache = new BoundedCache<>("book", 100, 300_000);
+    private final BookService bookService = new BookService(bookRepository, mock(BookSearchService.class),
+            bookCache, mock(BorrowCountAccumulator.class), mock(LeaderboardService.class));
+
+    @Test
+    void invalidationDuringLoadSkipsFill() {
+        Book stale = book(5);
+        when(bookRepository.findById(BOOK_ID)).thenAnswer(invocation -> {
+            bookCache.invalidate(BOOK_ID);
+            return Optional.of(stale);
+        });
+
+        bookService.getBookById(BOOK_ID);
+
+        assertThat(bookCache.get(BOOK_ID)).isNull();
+    }
+
+    @Test
+    void invalidationDuringBatchLoadSkipsFill() {
+        Book stale = book(5);
+        when(bookRepository.findAllById(any())).thenAnswer(invocation -> {
+            bookCache.invalidate(BOOK_ID);
+            return List.of(stale);
+        });
+
+        bookService.getBooksByIds(List.of(BOOK_ID));
+
+        assertThat(bookCache.get(BOOK_ID)).isNull();
+    }
+
+    @Test
+    void undisturbedLoadIsCached() {
+        when(bookRepository.findById(BOOK_ID)).thenReturn(Optional.of(book(5)));
+
+        bookService.getBookById(BOOK_ID);
+
+        assertThat(bookCache.get(BOOK_ID)).isNotNull();
+        assertThat(bookCache.get(BOOK_ID).getStock()).isEqualTo(5);
+    }
+
+    private static Book book(int stock) {
+        Book book = new Book();
+        book.setId(BOOK_ID);
+        book.setName("书名");
+        book.setStock(stock);
+        return book;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.config.IdAllocator;
+import com.example.bookmanagement.event.OverdueReturnHandler;
+import com.example.bookmanagement.model.BorrowRecord;
+import com.example.bookmanagement.repository.BorrowRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 归还与逾期任务并发：同一条逾期借阅记录只能记一次违规
+ * 用可重入锁模拟数据库行锁（FOR UPDATE持有至事务结束），两边反复竞争
+ */
+class BorrowRecordServiceConcurrencyTest {
+
+    private static final long RECORD_ID = 42L;
+    private static final int ROUNDS = 2000;
+
+    // 模拟borrow_records中的一行
+    private static final class Row {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile boolean returned;
+        volatile boolean overdueFlagged;
+        final AtomicInteger violations = new AtomicInteger();
+
+        BorrowRecord snapshot() {
+            BorrowRecord record = new BorrowRecord();
+            record.setId(RECORD_ID);
+            record.setUserId(7L);
+            record.setBookId(9L);
+            record.setBorrowTime(LocalDate.now().minusDays(20));
+            record.setDueDate(LocalDate.now().minusDays(13));
+            record.setReturned(returned);
+            record.setOverdueFlagged(overdueFlagged);
+            return record;
+        }
+    }
+
+    @Test
+    void returnRacingOverdueChunkRecordsExactlyOneViolation() throws Exception {
+        Row[] current = new Row[1];
+
+        BorrowRecordRepository repository = mock(BorrowRecordRepository.class);
+        // 加锁读：等待持锁方提交后读取最新值
+        when(repository.findByIdForUpdate(RECORD_ID)).thenAnswer(inv -> {
+            current[0].lock.lock();
+            return Optional.of(current[0].snapshot());
+        });
+        // 普通读：不等锁，可能读到旧的逾期标记
+        when(repository.findById(RECORD_ID)).thenAnswer(inv -> Optional.of(current[0].snapshot()));
+        when(repository.markReturned(eq(RECORD_ID), any())).thenAnswer(inv -> {
+            Row row = current[0];
+            row.lock.lock();
+            if (row.returned) {
+                return 0;
+            }
+            row.returned = true;
+            return 1;
+        });
+
+        OutboxService outboxService = mock(OutboxService.class);
+        doAnswer(inv -> {
+            current[0].violations.incrementAndGet();
+            return null;
+        }).when(outboxService).append(eq(OverdueReturnHandler.TYPE), anyLong(), any());
+
+        // 事务结束（提交/回滚）时释放本线程持有的行锁
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> {
+            TransactionCallback<?> callback = inv.getArgument(0);
+            try {
+                return callback.doInTransaction(null);
+            } finally {
+                releaseAll(current[0].lock);
+            }
+        });
+
+        BorrowRecordService service = new BorrowRecordService(repository, mock(BookService.class),
+                mock(BookHoldService.class), outboxService, mock(RecommendationService.class),
+                transactionTemplate, mock(JdbcTemplate.class), mock(IdAllocator.class));
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                Row row = new Row();
+                current[0] = row;
+                CyclicBarrier start = new CyclicBarrier(2);
+
+                Future<Map<String, Object>> returned = pool.submit(() -> {
+                    start.await();
+                    return service.returnBook(RECORD_ID);
+                });
+                // 逾期任务：锁定未归还、未处理的记录，标记并记违规，提交后释放
+                Future<?> chunk = pool.submit(() -> {
+                    start.await();
+                    row.lock.lock();
+                    try {
+                        if (!row.returned && !row.overdueFlagged) {
+                            Thread.sleep(0, 1000);
+                            row.overdueFlagged = true;
+                            row.violations.incrementAndGet();
+                        }
+                    } finally {
+                        row.lock.unlock();
+                    }
+                    return null;
+                });
+
+                assertThat(returned.get(10, TimeUnit.SECONDS)).containsEntry("success", true);
+                chunk.get(10, TimeUnit.SECONDS);
+                assertThat(row.violations.get()).as("第%d轮违规次数", round).isEqualTo(1);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void releaseAll(ReentrantLock lock) {
+        while (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.cache.BoundedCache;
+import com.example.bookmanagement.config.IdAllocator;
+import com.example.bookmanagement.model.Book;
+import com.example.bookmanagement.model.BorrowRecord;
+import com.example.bookmanagement.model.IdBlock;
+import com.example.bookmanagement.repository.BookRepository;
+import com.example.bookmanagement.repository.BorrowRecordRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 热门书籍并发借阅压测（H2，MySQL兼容模式，真实JPA仓库与事务）
+ * - 条件UPDATE（stock > 0）：M个并发借阅只成功N次，库存归零，借阅记录N条
+ * - 与旧的“读取-判断-保存”方式对比耗时与超卖（基准，mvn test -Pbenchmark -Dtest=BorrowRecordServiceStockStressTest）
+ */
+class BorrowRecordServiceStockStressTest {
+
+    private static final String URL = "jdbc:h2:mem:borrow_stress;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    private static final int THREADS = 16;
+
+    private HikariDataSource dataSource;
+    private AnnotationConfigApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private BookRepository bookRepository;
+    private BorrowRecordRepository borrowRecordRepository;
+    private BorrowRecordService borrowRecordService;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(THREADS + 2);
+        context = jpaContext(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        bookRepository = context.getBean(BookRepository.class);
+        borrowRecordRepository = context.getBean(BorrowRecordRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(JpaTransactionManager.class));
+
+        BookService bookService = new BookService(bookRepository, mock(BookSearchService.class),
+                new BoundedCache<>("book", 1000, 300_000), mock(BorrowCountAccumulator.class),
+                mock(LeaderboardService.class));
+        borrowRecordService = new BorrowRecordService(borrowRecordRepository, bookService,
+                mock(BookHoldService.class), mock(OutboxService.class), mock(RecommendationService.class),
+                transactionTemplate, jdbcTemplate, context.getBean(IdAllocator.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentBorrowsOfOneBookNeverOversell() throws Exception {
+        int stock = 50;
+        int attempts = 800;
+        long bookId = seedBook(stock);
+
+        int successes = run(attempts, userId ->
+                Boolean.TRUE.equals(borrowRecordService.borrowBook(userId, bookId).get("success")));
+
+        assertThat(successes).isEqualTo(stock);
+        assertThat(bookRepository.findById(bookId).orElseThrow().getStock()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records WHERE book_id = ?",
+                Long.class, bookId)).isEqualTo(stock);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void conditionalUpdateVersusLoadCheckSave() throws Exception {
+        int attempts = Integer.getInteger("benchmark.attempts", 5_000);
+        System.out.printf("[benchmark] attempts=%d, threads=%d%n", attempts, THREADS);
+        System.out.printf("[benchmark] %-40s %8s %10s %8s %8s %10s%n", "", "millis", "attempts/s", "success",
+                "stock", "records");
+        // 库存充足：每次借阅都应成功；热门书被借空：大部分请求被拒绝
+        compare("stock=attempts", attempts, attempts);
+        compare("stock=attempts/40", attempts / 40, attempts);
+    }
+
+    private void compare(String scenario, int stock, int attempts) throws Exception {
+        // 旧方式：读取书籍 -> 判断库存 -> 保存（各步骤各自提交，与改造前的decreaseStock一致）
+        long legacyBook = seedBook(stock);
+        long start = System.nanoTime();
+        int legacySuccesses = run(attempts, userId -> legacyBorrow(userId, legacyBook));
+        long legacyMillis = (System.nanoTime() - start) / 1_000_000;
+
+        long conditionalBook = seedBook(stock);
+        start = System.nanoTime();
+        int conditionalSuccesses = run(attempts, userId ->
+                Boolean.TRUE.equals(borrowRecordService.borrowBook(userId, conditionalBook).get("success")));
+        long conditionalMillis = (System.nanoTime() - start) / 1_000_000;
+
+        report(scenario + " load/check/save (old)", legacyMillis, attempts, legacySuccesses, legacyBook);
+        report(scenario + " conditional UPDATE", conditionalMillis, attempts, conditionalSuccesses, conditionalBook);
+
+        assertThat(conditionalSuccesses).isEqualTo(stock);
+        assertThat(bookRepository.findById(conditionalBook).orElseThrow().getStock()).isZero();
+    }
+
+    private boolean legacyBorrow(long userId, long bookId) {
+        try {
+            Book book = bookRepository.findById(bookId).orElseThrow(() -> new RuntimeException("书籍不存在"));
+            if (book.getStock() <= 0) {
+                throw new RuntimeException("书籍库存不足");
+            }
+            book.setStock(book.getStock() - 1);
+            bookRepository.save(book);
+
+            BorrowRecord record = new BorrowRecord();
+            record.setUserId(userId);
+            record.setBookId(bookId);
+            record.setBorrowTime(LocalDate.now());
+            record.setDueDate(record.getBorrowTime().plusDays(BorrowRecord.BORROW_DAYS));
+            borrowRecordRepository.save(record);
+
+            book.setBorrowCount(book.getBorrowCount() + 1);
+            bookRepository.save(book);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void report(String name, long millis, int attempts, int successes, long bookId) {
+        System.out.printf("[benchmark] %-40s %8d %10.0f %8d %8d %10d%n", name, millis,
+                attempts * 1000.0 / Math.max(1, millis), successes,
+                bookRepository.findById(bookId).orElseThrow().getStock(),
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrow_records WHERE book_id = ?", Long.class, bookId));
+    }
+
+    // THREADS个线程同时开始，共执行attempts次借阅，返回成功次数
+    private static int run(int attempts, LongPredicate borrow) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger successes = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = next.getAndIncrement(); i < attempts; i = next.getAndIncrement()) {
+                        if (borrow.test(1000L + i)) {
+                            successes.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(300, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return successes.get();
+    }
+
+    private long seedBook(int stock) {
+        Book book = new Book();
+        book.setName("热门书籍");
+        book.setAuthor("作者");
+        book.setStock(stock);
+        return transactionTemplate.execute(status -> bookRepository.save(book)).getId();
+    }
+
+    // 只启用本测试用到的两个仓库（其他仓库涉及的实体未注册）；仓库方法与应用中一样自带事务
+    @Configuration
+    @EnableJpaRepositories(basePackageClasses = BookRepository.class, includeFilters = @ComponentScan.Filter(
+            type = FilterType.ASSIGNABLE_TYPE, classes = {BookRepository.class, BorrowRecordRepository.class}))
+    static class Repositories {
+    }
+
+    // 最小JPA上下文：与Spring Boot一样把SpringBeanContainer交给Hibernate（@AllocatedId通过它获取IdAllocator）
+    private static AnnotationConfigApplicationContext jpaContext(HikariDataSource dataSource) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.register(Repositories.class);
+        context.registerBean("entityManagerFactory", LocalContainerEntityManagerFactoryBean.class, () -> {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setDataSource(dataSource);
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            factory.setManagedTypes(PersistenceManagedTypes.of(Book.class.getName(), BorrowRecord.class.getName(),
+                    IdBlock.class.getName()));
+            factory.setJpaPropertyMap(Map.of(
+                    "hibernate.hbm2ddl.auto", "create-drop",
+                    "hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName(),
+                    "hibernate.resource.beans.container", new SpringBeanContainer(context.getBeanFactory())));
+            return factory;
+        });
+        // 取号段使用独立数据源，不占用业务连接池
+        context.registerBean("transactionManager", JpaTransactionManager.class,
+                () -> new JpaTransactionManager(context.getBean(EntityManagerFactory.class)));
+        context.registerBean(IdAllocator.class, () -> new IdAllocator(new DriverManagerDataSource(URL, "sa", ""), 100, 0));
+        context.refresh();
+        return context;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bookmanagement.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 排行榜对账：读库期间本节点的借阅/评价不能被对账结果覆盖
+ */
+class LeaderboardServiceTest {
+
+    private static final long BOOK_ID = 1L;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final LeaderboardService service = new LeaderboardService(jdbcTemplate);
+    // 读库时执行的操作，模拟对账期间并发的借阅/评价
+    private Runnable duringLoad = () -> { };
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(service, "minComments", 1);
+        ReflectionTestUtils.setField(service, "windowDays", 7);
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong("id")).thenReturn(BOOK_ID);
+        when(row.getString("name")).thenReturn("书名");
+        when(row.getLong("borrow_count")).thenReturn(10L);
+        when(row.getLong("score_sum")).thenReturn(8L);
+        when(row.getLong("score_count")).thenReturn(2L);
+        doAnswer(invocation -> {
+            duringLoad.run();
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT b.id"), any(RowCallbackHandler.class));
+        doAnswer(invocation -> null).when(jdbcTemplate)
+                .query(eq("SELECT book_id, borrow_time, COUNT(*) AS cnt FROM borrow_records " +
+                        "WHERE borrow_time > ? GROUP BY book_id, borrow_time"), any(RowCallbackHandler.class), any());
+        service.reconcile();
+    }
+
+    @Test
+    void changesDuringReconcileAreReplayed() {
+        duringLoad = () -> {
+            service.recordBorrow(BOOK_ID);
+            service.applyScoreDelta(BOOK_ID, 2, 1);
+        };
+
+        service.reconcile();
+
+        Map<String, Object> entry = top(LeaderboardService.BORROWS);
+        assertThat(entry.get("borrowCount")).isEqualTo(11L);
+        assertThat(entry.get("commentCount")).isEqualTo(3L);
+        assertThat(entry.get("avgScore")).isEqualTo(10.0 / 3);
+        assertThat(top(LeaderboardService.RECENT).get("recentBorrows")).isEqualTo(1L);
+    }
+
+    @Test
+    void changesAfterReconcileAreNotReplayedAgain() {
+        duringLoad = () -> service.recordBorrow(BOOK_ID);
+        service.reconcile();
+        duringLoad = () -> { };
+
+        service.reconcile();
+
+        assertThat(top(LeaderboardService.BORROWS).get("borrowCount")).isEqualTo(10L);
+    }
+
+    private Map<String, Object> top(String board) {
+        List<Map<String, Object>> top = service.top(board, null, 1);
+        assertThat(top).hasSize(1);
+        return top.get(0);
+    }
+}
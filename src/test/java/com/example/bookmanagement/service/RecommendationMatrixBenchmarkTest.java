@@ -0,0 +1,124 @@
+package com.example.bookmanagement.service;
+
+import com.example.bookmanagement.BenchmarkSupport;
+import com.example.bookmanagement.cache.LongIntHashMap;
+import com.example.bookmanagement.cache.LongObjectHashMap;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 共现矩阵构建基准：LongIntHashMap/LongObjectHashMap（基本类型数组） vs HashMap<Long, Map<Long, Integer>>（装箱）
+ * 借阅历史为合成数据：固定随机种子，书籍热度按幂律分布，按用户聚集、同一用户最新在前（与streamUserBookPairs一致）
+ * 运行：mvn test -Pbenchmark -Dtest=RecommendationMatrixBenchmarkTest [-Dbenchmark.rows=3000000]
+ */
+@Tag("benchmark")
+class RecommendationMatrixBenchmarkTest {
+
+    private static final int BOOKS = 20_000;
+    private static final int AVG_BOOKS_PER_USER = 12;
+    private static final int MAX_BOOKS_PER_USER = 200;
+
+    @Test
+    void primitiveMatrixBuildsFasterAndSmallerThanBoxedBaseline() {
+        int rows = Integer.getInteger("benchmark.rows", 2_000_000);
+        long[][] history = syntheticHistory(rows, 20251218L);
+        System.out.printf("[benchmark] borrow rows=%d, users=%d, books=%d%n", rows, history[0].length == 0 ? 0
+                : history[0][history[0].length - 1] + 1, BOOKS);
+
+        // 装箱基线
+        long baseHeap = BenchmarkSupport.usedHeap();
+        long start = System.nanoTime();
+        Map<Long, Map<Long, Integer>> boxed = buildBoxed(history);
+        long boxedMillis = (System.nanoTime() - start) / 1_000_000;
+        long boxedBytes = BenchmarkSupport.usedHeap() - baseHeap;
+        long boxedPairs = boxed.values().stream().mapToLong(Map::size).sum();
+        int boxedBooks = boxed.size();
+        int boxedProbe = boxed.getOrDefault(history[1][0], Map.of()).getOrDefault(history[1][1], 0);
+        boxed = null;
+
+        // 基本类型实现（与RecommendationService.rebuild相同的构建器）
+        baseHeap = BenchmarkSupport.usedHeap();
+        start = System.nanoTime();
+        RecommendationService.MatrixBuilder builder = new RecommendationService.MatrixBuilder(MAX_BOOKS_PER_USER);
+        for (int i = 0; i < history[0].length; i++) {
+            builder.accept(history[0][i], history[1][i]);
+        }
+        LongObjectHashMap<LongIntHashMap> primitive = builder.finish();
+        long primitiveMillis = (System.nanoTime() - start) / 1_000_000;
+        long primitiveBytes = BenchmarkSupport.usedHeap() - baseHeap;
+        long[] primitivePairs = {0};
+        long[] estimatedBytes = {primitive.estimatedBytes()};
+        primitive.forEach((bookId, row) -> {
+            primitivePairs[0] += row.size();
+            estimatedBytes[0] += row.estimatedBytes();
+        });
+
+        System.out.printf("[benchmark] %-28s %8s %10s %14s %10s%n", "", "millis", "pairs", "heap bytes", "bytes/pair");
+        System.out.printf("[benchmark] %-28s %8d %10d %14d %10.1f%n", "HashMap<Long,Map<Long,Integer>>",
+                boxedMillis, boxedPairs, boxedBytes, (double) boxedBytes / boxedPairs);
+        System.out.printf("[benchmark] %-28s %8d %10d %14d %10.1f (estimatedBytes=%d)%n", "LongObjectHashMap/LongIntHashMap",
+                primitiveMillis, primitivePairs[0], primitiveBytes, (double) primitiveBytes / primitivePairs[0],
+                estimatedBytes[0]);
+
+        // 两种实现结果一致
+        assertThat(primitive.size()).isEqualTo(boxedBooks);
+        assertThat(primitivePairs[0]).isEqualTo(boxedPairs);
+        LongIntHashMap probeRow = primitive.get(history[1][0]);
+        assertThat(probeRow == null ? 0 : probeRow.get(history[1][1])).isEqualTo(boxedProbe);
+        assertThat(primitiveBytes).isLessThan(boxedBytes);
+    }
+
+    // 装箱基线：与MatrixBuilder相同的规则（每人最近N本去重，两两对称计数）
+    private static Map<Long, Map<Long, Integer>> buildBoxed(long[][] history) {
+        Map<Long, Map<Long, Integer>> matrix = new HashMap<>();
+        Set<Long> userBooks = new LinkedHashSet<>();
+        long currentUser = Long.MIN_VALUE;
+        for (int i = 0; i <= history[0].length; i++) {
+            if (i == history[0].length || history[0][i] != currentUser) {
+                Long[] books = userBooks.toArray(new Long[0]);
+                for (int a = 0; a < books.length; a++) {
+                    for (int b = a + 1; b < books.length; b++) {
+                        matrix.computeIfAbsent(books[a], k -> new HashMap<>()).merge(books[b], 1, Integer::sum);
+                        matrix.computeIfAbsent(books[b], k -> new HashMap<>()).merge(books[a], 1, Integer::sum);
+                    }
+                }
+                userBooks.clear();
+                if (i == history[0].length) {
+                    break;
+                }
+                currentUser = history[0][i];
+            }
+            if (userBooks.size() < MAX_BOOKS_PER_USER) {
+                userBooks.add(history[1][i]);
+            }
+        }
+        return matrix;
+    }
+
+    // [0]=用户ID（从0递增），[1]=书籍ID（1起，幂律热度）
+    private static long[][] syntheticHistory(int rows, long seed) {
+        Random random = new Random(seed);
+        long[] users = new long[rows];
+        long[] books = new long[rows];
+        long user = 0;
+        int i = 0;
+        while (i < rows) {
+            int count = 1 + (int) (-Math.log(1 - random.nextDouble()) * AVG_BOOKS_PER_USER);
+            for (int k = 0; k < count && i < rows; k++, i++) {
+                users[i] = user;
+                // 幂律：少数热门书占大部分借阅
+                books[i] = 1 + (long) (BOOKS * Math.pow(random.nextDouble(), 3));
+            }
+            user++;
+        }
+        return new long[][]{users, books};
+    }
+}